@@ -0,0 +1,68 @@
+-- Size and history-scan comparison of the text-based "Message" layout (V1..V3) and the compact one (V4).
+-- Runs in its own schema and leaves nothing behind:
+--   docker exec -i request-postgres psql -U request -d requestdb < bench/compact-schema-benchmark.sql
+\set sessions 20000
+\set messages_per_session 50
+\timing on
+
+drop schema if exists bench_layout cascade;
+create schema bench_layout;
+set search_path = bench_layout;
+
+create table message_text (
+    id bigserial primary key,
+    session_id bigint not null,
+    role text not null,
+    text text not null,
+    timestamp timestamp not null,
+    status text not null default 'COMPLETED'
+);
+
+create table message_compact (
+    id bigint generated by default as identity primary key,
+    session_id bigint not null,
+    timestamp timestamptz not null,
+    role smallint not null,
+    status smallint not null default 1,
+    text text compression lz4 not null
+);
+
+-- alternating user/assistant turns, assistant replies long enough to be TOASTed
+insert into message_text(session_id, role, text, timestamp)
+select s, case when m % 2 = 0 then 'accountant' else 'assistant' end,
+       case when m % 2 = 0 then 'Как правильно оформить счет-фактуру? ' || s || '/' || m
+            else repeat('Счет-фактура оформляется согласно статье 169 НК РФ. ', 60 + m % 40) end,
+       timestamp '2025-01-01' + (s * :messages_per_session + m) * interval '1 second'
+from generate_series(1, :sessions) s, generate_series(1, :messages_per_session) m;
+
+insert into message_compact(id, session_id, timestamp, role, status, text)
+select id, session_id, timestamp at time zone 'UTC', case role when 'assistant' then 2 else 1 end, 1, text
+from message_text;
+
+create index on message_text(session_id, timestamp);
+create index on message_compact(session_id, timestamp);
+vacuum analyze message_text;
+vacuum analyze message_compact;
+
+select c.relname as "table",
+       pg_size_pretty(pg_relation_size(c.oid)) as heap,
+       pg_size_pretty(pg_total_relation_size(c.reltoastrelid)) as toast,
+       pg_size_pretty(pg_indexes_size(c.oid)) as indexes,
+       pg_size_pretty(pg_total_relation_size(c.oid)) as total
+from pg_class c
+where c.relnamespace = 'bench_layout'::regnamespace and c.relkind = 'r'
+order by c.relname;
+
+-- history scan of one session (what every /request turn does), then a scan over many sessions
+explain (analyze, buffers, costs off)
+select role, text from message_text where session_id = 4242 order by timestamp;
+explain (analyze, buffers, costs off)
+select role, text from message_compact where session_id = 4242 order by timestamp;
+
+explain (analyze, buffers, costs off)
+select session_id, role, timestamp from message_text where session_id between 1000 and 3000 order by session_id, timestamp;
+explain (analyze, buffers, costs off)
+select session_id, role, timestamp from message_compact where session_id between 1000 and 3000 order by session_id, timestamp;
+
+reset search_path;
+drop schema bench_layout cascade;
@@ -0,0 +1,54 @@
+#!/bin/sh
+# Startup time of the fat-jar image (stage run) vs the AOT + AppCDS image (stage fast-start).
+# Needs docker and the compose database: docker compose up -d db
+# Usage: bench/startup-benchmark.sh [runs]
+# Startup is measured until the liveness probe answers; readiness comes after the warm-up (WarmupRunner),
+# which is off by default so the LLM backend does not skew the numbers. WARMUP=true to time it separately.
+# The averages are appended to bench/startup-results.md, commit them together with the change they measure.
+set -e
+
+RUNS=${1:-5}
+PORT=18081
+WARMUP=${WARMUP:-false}
+DB_ENV="-e DB_HOST=localhost -e DB_PORT=5432 -e DB_NAME=requestdb -e DB_USER=request -e DB_PASSWORD=request"
+
+cd "$(dirname "$0")/.."
+docker build -q --target run -t request-service:fat-jar . > /dev/null
+docker build -q --target fast-start -t request-service:fast-start . > /dev/null
+
+measure() {
+    image=$1
+    total=0
+    total_warmup=0
+    for i in $(seq "$RUNS"); do
+        start=$(date +%s%N)
+        container=$(docker run -d --rm --network host $DB_ENV -e SERVER_PORT=$PORT -e WARMUP_ENABLED=$WARMUP "$image")
+        until curl -fs "http://localhost:$PORT/actuator/health/liveness" > /dev/null 2>&1; do
+            sleep 0.05
+        done
+        live=$(date +%s%N)
+        until curl -fs "http://localhost:$PORT/actuator/health/readiness" > /dev/null 2>&1; do
+            sleep 0.05
+        done
+        ready=$(date +%s%N)
+        spring=$(docker logs "$container" 2>&1 | sed -n 's/.*Started RequestServiceApplication in \([0-9.]*\) seconds.*/\1/p')
+        docker stop "$container" > /dev/null
+        ms=$(( (live - start) / 1000000 ))
+        warmup_ms=$(( (ready - live) / 1000000 ))
+        total=$((total + ms))
+        total_warmup=$((total_warmup + warmup_ms))
+        echo "$image run $i: started in ${ms} ms (Spring reports ${spring} s), ready ${warmup_ms} ms later (warm-up $WARMUP)"
+    done
+    avg_start=$((total / RUNS))
+    avg_warmup=$((total_warmup / RUNS))
+    echo "$image average: started in ${avg_start} ms, warm-up ${avg_warmup} ms"
+}
+
+# the fat-jar image runs Flyway, so the schema is up to date for the prod image as well
+measure request-service:fat-jar
+fat_start=$avg_start
+fat_warmup=$avg_warmup
+measure request-service:fast-start
+
+echo "| $(date -u +%Y-%m-%d) | $(git rev-parse --short HEAD) | $RUNS | $WARMUP | $fat_start | $avg_start | $fat_warmup | $avg_warmup |" \
+    >> bench/startup-results.md
@@ -0,0 +1,19 @@
+#!/bin/sh
+# Hot standby: clones the primary on first start, then follows it via streaming replication.
+set -e
+
+if [ ! -s "$PGDATA/PG_VERSION" ]; then
+    until PGPASSWORD="$REPLICATION_PASSWORD" pg_basebackup \
+            -h "$PRIMARY_HOST" -U "$REPLICATION_USER" -D "$PGDATA" -R -X stream; do
+        echo "Waiting for primary $PRIMARY_HOST..."
+        rm -rf "${PGDATA:?}"/*
+        sleep 2
+    done
+fi
+
+# long read-only queries (the nightly export) must not be cancelled by recovery conflicts:
+# feedback keeps the primary from vacuuming rows they still see, the delay lets WAL replay wait for them
+# (the lag check takes the replica out of rotation meanwhile)
+exec docker-entrypoint.sh postgres -c hot_standby=on \
+    -c hot_standby_feedback=on \
+    -c max_standby_streaming_delay=15min
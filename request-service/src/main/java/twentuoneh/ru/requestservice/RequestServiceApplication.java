@@ -2,8 +2,10 @@ package twentuoneh.ru.requestservice;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class RequestServiceApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,42 @@
+package twentuoneh.ru.requestservice.configuration;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.aot.AotDetector;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Spring AOT evaluates bean conditions at build time. Switches that still depend on them (Flyway, springdoc)
+ * are checked against the runtime properties, so a mismatch stops the startup instead of being ignored.
+ */
+@Component
+public class AotConditionCheck implements SmartInitializingSingleton {
+
+    private final Environment environment;
+    private final ListableBeanFactory beanFactory;
+
+    public AotConditionCheck(Environment environment, ListableBeanFactory beanFactory) {
+        this.environment = environment;
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!AotDetector.useGeneratedArtifacts()) {
+            return;
+        }
+        check("spring.flyway.enabled", Flyway.class);
+        check("springdoc.api-docs.enabled", OpenApiConfig.class);
+    }
+
+    private void check(String property, Class<?> beanType) {
+        boolean enabled = environment.getProperty(property, Boolean.class, true);
+        boolean present = beanFactory.getBeanNamesForType(beanType, false, false).length > 0;
+        if (enabled != present) {
+            throw new IllegalStateException(property + "=" + enabled + " at runtime, but the AOT image was built with it "
+                    + (present ? "enabled" : "disabled") + ": rebuild with matching AOT_PROFILES or use the regular image");
+        }
+    }
+}
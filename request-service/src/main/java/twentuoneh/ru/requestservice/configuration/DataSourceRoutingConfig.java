@@ -0,0 +1,90 @@
+package twentuoneh.ru.requestservice.configuration;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import twentuoneh.ru.requestservice.datasource.DataSourceRoutingProperties;
+import twentuoneh.ru.requestservice.datasource.ReadYourWritesTracker;
+import twentuoneh.ru.requestservice.datasource.ReplicaRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@EnableConfigurationProperties(DataSourceRoutingProperties.class)
+public class DataSourceRoutingConfig {
+
+    private static final String REPLICA_HIKARI_PREFIX = "app.datasource.routing.hikari";
+
+    /**
+     * The primary pool is bound from spring.datasource.hikari.* exactly as without routing.
+     */
+    @Bean
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties, MeterRegistry meterRegistry) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        primary.setPoolName(ReplicaRoutingDataSource.PRIMARY);
+        primary.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return primary;
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primaryDataSource,
+                                                             DataSourceProperties dataSourceProperties,
+                                                             DataSourceRoutingProperties routingProperties,
+                                                             ReadYourWritesTracker readYourWritesTracker,
+                                                             Environment environment,
+                                                             MeterRegistry meterRegistry) {
+        MicrometerMetricsTrackerFactory metrics = new MicrometerMetricsTrackerFactory(meterRegistry);
+        Binder binder = Binder.get(environment);
+
+        List<HikariDataSource> replicaPools = new ArrayList<>();
+        // decided at runtime, not by a bean condition: AOT images fix conditions at build time
+        List<DataSourceRoutingProperties.Replica> replicas = routingProperties.isEnabled()
+                ? routingProperties.getReplicas()
+                : List.of();
+        for (int i = 0; i < replicas.size(); i++) {
+            DataSourceRoutingProperties.Replica replica = replicas.get(i);
+            // app.datasource.routing.hikari.* applies to every replica pool, like spring.datasource.hikari.* to the primary
+            HikariConfig replicaConfig = new HikariConfig();
+            binder.bind(REPLICA_HIKARI_PREFIX, Bindable.ofInstance(replicaConfig));
+            replicaConfig.setPoolName("replica-" + i);
+            replicaConfig.setJdbcUrl(replica.getUrl());
+            replicaConfig.setUsername(replica.getUsername());
+            replicaConfig.setPassword(replica.getPassword());
+            replicaConfig.setDriverClassName(dataSourceProperties.determineDriverClassName());
+            replicaConfig.setReadOnly(true);
+            // a replica that is down must not block startup, it is simply kept out of rotation
+            replicaConfig.setInitializationFailTimeout(-1);
+            replicaConfig.setMetricsTrackerFactory(metrics);
+            replicaPools.add(new HikariDataSource(replicaConfig));
+        }
+
+        return new ReplicaRoutingDataSource(
+                primaryDataSource,
+                replicaPools,
+                readYourWritesTracker,
+                routingProperties.getMaxReplicaLag(),
+                meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+}
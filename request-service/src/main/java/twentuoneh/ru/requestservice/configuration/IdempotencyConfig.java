@@ -0,0 +1,28 @@
+package twentuoneh.ru.requestservice.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import twentuoneh.ru.requestservice.service.idempotency.IdempotencyStore;
+import twentuoneh.ru.requestservice.service.idempotency.InMemoryIdempotencyStore;
+import twentuoneh.ru.requestservice.service.idempotency.JdbcIdempotencyStore;
+
+/**
+ * The store is picked when the bean is created, not by a bean condition: Spring AOT fixes conditions
+ * at build time, and the fast-start image must still honour IDEMPOTENCY_STORE.
+ */
+@Configuration
+public class IdempotencyConfig {
+
+    @Bean
+    public IdempotencyStore idempotencyStore(@Value("${app.idempotency.store:memory}") String store,
+                                             JdbcTemplate jdbcTemplate) {
+        return switch (store) {
+            case "memory" -> new InMemoryIdempotencyStore();
+            case "postgres" -> new JdbcIdempotencyStore(jdbcTemplate);
+            default -> throw new IllegalStateException(
+                    "Unknown app.idempotency.store '" + store + "', expected memory or postgres");
+        };
+    }
+}
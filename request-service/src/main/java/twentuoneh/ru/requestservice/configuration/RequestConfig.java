@@ -4,23 +4,29 @@ import io.netty.channel.ChannelOption;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.handler.timeout.WriteTimeoutHandler;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.netty.http.client.HttpClient;
+import twentuoneh.ru.requestservice.service.llm.BrownoutProperties;
+import twentuoneh.ru.requestservice.service.llm.LlmBackendRouter;
+import twentuoneh.ru.requestservice.service.llm.LlmSchedulerProperties;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 @Configuration
+@EnableConfigurationProperties({LlmSchedulerProperties.class, BrownoutProperties.class})
 public class RequestConfig {
 
-    @Value("${ai.localai.base-url:http://localhost:8080}")
-    private String llmBaseUrl;
+    @Value("${ai.localai.base-urls:${ai.localai.base-url:http://localhost:8080}}")
+    private List<String> llmBaseUrls;
 
     @Bean
-    public WebClient llmWebClient(WebClient.Builder builder) {
+    public LlmBackendRouter llmBackendRouter(WebClient.Builder builder) {
         int timeoutMillis = 180000;
         HttpClient httpClient = HttpClient.create()
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 30000)
@@ -28,10 +34,16 @@ public class RequestConfig {
                 .doOnConnected(conn ->
                         conn.addHandlerLast(new ReadTimeoutHandler(timeoutMillis, TimeUnit.MILLISECONDS))
                                 .addHandlerLast(new WriteTimeoutHandler(30000, TimeUnit.MILLISECONDS)));
+        ReactorClientHttpConnector connector = new ReactorClientHttpConnector(httpClient);
 
-        return builder
-                .clientConnector(new ReactorClientHttpConnector(httpClient))
-                .baseUrl(llmBaseUrl)
-                .build();
+        List<LlmBackendRouter.Backend> backends = llmBaseUrls.stream()
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .map(url -> new LlmBackendRouter.Backend(url, builder.clone()
+                        .clientConnector(connector)
+                        .baseUrl(url)
+                        .build()))
+                .toList();
+        return new LlmBackendRouter(backends);
     }
 }
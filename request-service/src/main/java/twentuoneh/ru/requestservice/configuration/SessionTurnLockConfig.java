@@ -0,0 +1,61 @@
+package twentuoneh.ru.requestservice.configuration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import twentuoneh.ru.requestservice.service.llm.LlmSchedulerProperties;
+import twentuoneh.ru.requestservice.service.turns.AdvisorySessionTurnLock;
+import twentuoneh.ru.requestservice.service.turns.LocalSessionTurnLock;
+import twentuoneh.ru.requestservice.service.turns.SessionTurnLock;
+
+import java.time.Duration;
+
+/**
+ * Picks the lock by SESSION_LOCK_MODE at runtime, so that it also works in the AOT image.
+ */
+@Configuration
+public class SessionTurnLockConfig {
+
+    private static final String LOCK_POOL = "session-lock";
+
+    @Bean
+    public SessionTurnLock sessionTurnLock(@Value("${app.session-lock.mode:local}") String mode,
+                                           @Value("${app.session-lock.pool-size:32}") int poolSize,
+                                           @Value("${app.session-lock.connection-timeout:180s}") Duration connectionTimeout,
+                                           DataSourceProperties dataSourceProperties,
+                                           LlmSchedulerProperties schedulerProperties,
+                                           MeterRegistry meterRegistry) {
+        return switch (mode) {
+            case "local" -> new LocalSessionTurnLock();
+            case "advisory" -> {
+                // every generating turn holds a lock connection, a smaller pool would leave LLM slots idle
+                if (poolSize < schedulerProperties.getMaxConcurrency()) {
+                    throw new IllegalStateException("app.session-lock.pool-size (" + poolSize
+                            + ") must be at least app.llm.scheduling.max-concurrency (" + schedulerProperties.getMaxConcurrency() + ")");
+                }
+                yield new AdvisorySessionTurnLock(lockPool(dataSourceProperties, poolSize, connectionTimeout, meterRegistry));
+            }
+            default -> throw new IllegalStateException(
+                    "Unknown app.session-lock.mode '" + mode + "', expected local or advisory");
+        };
+    }
+
+    // not a bean: it must not compete with the application DataSource for injection
+    private static HikariDataSource lockPool(DataSourceProperties dataSourceProperties, int poolSize,
+                                             Duration connectionTimeout, MeterRegistry meterRegistry) {
+        HikariDataSource pool = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        pool.setPoolName(LOCK_POOL);
+        pool.setMaximumPoolSize(poolSize);
+        pool.setMinimumIdle(1);
+        // waiting for a lock connection is waiting for a turn: bounded by the request timeout, not by the 30s default
+        pool.setConnectionTimeout(connectionTimeout.toMillis());
+        pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return pool;
+    }
+}
@@ -0,0 +1,75 @@
+package twentuoneh.ru.requestservice.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import twentuoneh.ru.requestservice.enums.Assistant;
+import twentuoneh.ru.requestservice.enums.ExportFormat;
+import twentuoneh.ru.requestservice.service.export.ConversationExportService;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+@RestController
+@Tag(name = "Export", description = "Выгрузка переписок для аналитики")
+public class ExportController {
+
+    private final ConversationExportService exportService;
+    // the export contains every conversation, so it is not served on the public port unless asked for;
+    // checked per request rather than by a condition, which AOT would fix at build time
+    private final boolean httpEnabled;
+
+    public ExportController(ConversationExportService exportService,
+                            @Value("${app.export.http.enabled:false}") boolean httpEnabled) {
+        this.exportService = exportService;
+        this.httpEnabled = httpEnabled;
+    }
+
+    @Operation(
+            summary = "Выгрузить сообщения",
+            description = "Потоковая выгрузка сообщений за период в NDJSON или CSV, по умолчанию сжатая gzip. " +
+                    "Память не зависит от объема выгрузки. Доступна только при app.export.http.enabled=true, иначе 404."
+    )
+    @GetMapping("/export/messages")
+    public ResponseEntity<StreamingResponseBody> exportMessages(
+            @Parameter(description = "Формат выгрузки", example = "NDJSON")
+            @RequestParam(defaultValue = "NDJSON") ExportFormat format,
+            @Parameter(description = "Начало периода включительно (UTC)", example = "2025-01-01")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @Parameter(description = "Конец периода не включительно (UTC), по умолчанию завтра", example = "2025-01-02")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @Parameter(description = "Только сессии этого ассистента", example = "ACCOUNTANT")
+            @RequestParam(required = false) Assistant assistant,
+            @Parameter(description = "Сжимать gzip")
+            @RequestParam(defaultValue = "true") boolean gzip
+    ) {
+        if (!httpEnabled) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        LocalDate start = from != null ? from : LocalDate.EPOCH;
+        LocalDate end = to != null ? to : LocalDate.now(ZoneOffset.UTC).plusDays(1);
+        String fileName = "messages-" + start + "-" + end + "." + format.extension() + (gzip ? ".gz" : "");
+
+        StreamingResponseBody body = out -> exportService.export(format,
+                start.atStartOfDay().toInstant(ZoneOffset.UTC),
+                end.atStartOfDay().toInstant(ZoneOffset.UTC),
+                assistant, gzip, out);
+
+        return ResponseEntity.ok()
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip") : MediaType.parseMediaType(format.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString())
+                .body(body);
+    }
+}
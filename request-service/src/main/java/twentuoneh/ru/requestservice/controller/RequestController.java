@@ -1,6 +1,7 @@
 package twentuoneh.ru.requestservice.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -8,15 +9,24 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
 import twentuoneh.ru.requestservice.dto.MessageRequest;
 import twentuoneh.ru.requestservice.dto.MessageResponse;
 import twentuoneh.ru.requestservice.service.RequestService;
 
+import java.time.Duration;
+import java.util.concurrent.Future;
+
 @RestController
 @Tag(name = "Request", description = "API для отправки сообщений AI-ассистентам")
 public class RequestController {
@@ -24,6 +34,9 @@ public class RequestController {
     @Autowired
     private final RequestService requestService;
 
+    @Value("${app.request.timeout:180s}")
+    private Duration requestTimeout;
+
     public RequestController(RequestService requestService) {
         this.requestService = requestService;
     }
@@ -55,13 +68,29 @@ public class RequestController {
                     responseCode = "400",
                     description = "Некорректный запрос"
             ),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "Запрос с этим Idempotency-Key еще обрабатывается"
+            ),
+            @ApiResponse(
+                    responseCode = "410",
+                    description = "Генерация отменена через DELETE /request; уже сгенерированный текст сохранен со статусом CANCELLED"
+            ),
+            @ApiResponse(
+                    responseCode = "422",
+                    description = "Idempotency-Key уже использован с другим телом запроса"
+            ),
             @ApiResponse(
                     responseCode = "500",
                     description = "Внутренняя ошибка сервера"
+            ),
+            @ApiResponse(
+                    responseCode = "504",
+                    description = "Генерация не уложилась в таймаут и была отменена"
             )
     })
     @PostMapping("/request")
-    public ResponseEntity<MessageResponse> sendMessage(
+    public DeferredResult<MessageResponse> sendMessage(
             @io.swagger.v3.oas.annotations.parameters.RequestBody(
                     description = "Запрос с сообщением для ассистента",
                     required = true,
@@ -108,9 +137,48 @@ public class RequestController {
                             }
                     )
             )
-            @RequestBody MessageRequest message
+            @RequestBody MessageRequest message,
+            @Parameter(
+                    description = "Ключ идемпотентности: повтор запроса с тем же ключом не запускает генерацию заново",
+                    example = "3f1c9a7e-6b1d-4c55-9a8e-2f4b7d0c1e11"
+            )
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey
+    ) {
+        DeferredResult<MessageResponse> result = new DeferredResult<>(requestTimeout.toMillis(),
+                () -> new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Generation timed out"));
+        Future<?> generation = requestService.sendMessageAsync(message, idempotencyKey, result);
+
+        result.onTimeout(() -> requestService.cancel(generation, RequestService.CANCEL_TIMEOUT));
+        // with an Idempotency-Key the client is expected to retry and attach to the running generation,
+        // so a broken connection does not cancel it: such a client cancels with DELETE /request.
+        // Tomcat reports a disconnect only on a write, so a client that silently goes away is cancelled by the timeout
+        if (idempotencyKey == null) {
+            result.onError(ex -> requestService.cancel(generation, RequestService.CANCEL_DISCONNECT));
+        }
+        return result;
+    }
+
+    @Operation(
+            summary = "Отменить генерацию",
+            description = "Прерывает генерацию, запущенную с этим Idempotency-Key: слот LLM освобождается, " +
+                    "уже сгенерированный текст сохраняется в истории со статусом CANCELLED. " +
+                    "Отменяется только генерация, идущая на этом экземпляре сервиса."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Генерация отменена"),
+            @ApiResponse(responseCode = "404", description = "Генерации с этим ключом на этом экземпляре нет")
+    })
+    @DeleteMapping("/request")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void cancel(
+            @Parameter(description = "Ключ идемпотентности запроса, который нужно отменить",
+                    example = "3f1c9a7e-6b1d-4c55-9a8e-2f4b7d0c1e11")
+            @RequestHeader("Idempotency-Key") String idempotencyKey,
+            @Parameter(description = "userId из отменяемого запроса", example = "1")
+            @RequestParam(required = false) Long userId
     ) {
-        MessageResponse response = requestService.sendMessage(message);
-        return ResponseEntity.status(HttpStatus.OK).body(response);
+        if (!requestService.cancel(userId, idempotencyKey)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No running generation for this Idempotency-Key");
+        }
     }
 }
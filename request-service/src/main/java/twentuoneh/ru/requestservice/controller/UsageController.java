@@ -0,0 +1,83 @@
+package twentuoneh.ru.requestservice.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import twentuoneh.ru.requestservice.dto.DailyTokenUsage;
+import twentuoneh.ru.requestservice.dto.TokenUsage;
+import twentuoneh.ru.requestservice.dto.TokenUsageSummary;
+import twentuoneh.ru.requestservice.enums.Assistant;
+import twentuoneh.ru.requestservice.service.usage.TokenUsageService;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+@RestController
+@Tag(name = "Usage", description = "Учет токенов LLM для планирования мощностей и квот")
+public class UsageController {
+
+    private final TokenUsageService tokenUsageService;
+    // per-user usage is not scoped to the caller, so it is off on the public port unless asked for
+    private final boolean usersEnabled;
+
+    public UsageController(TokenUsageService tokenUsageService,
+                           @Value("${app.usage.http.users-enabled:false}") boolean usersEnabled) {
+        this.tokenUsageService = tokenUsageService;
+        this.usersEnabled = usersEnabled;
+    }
+
+    @Operation(
+            summary = "Текущее потребление токенов",
+            description = "Счетчики этого экземпляра с момента запуска: токены в секунду, " +
+                    "отношение токенов промпта к сгенерированным, разбивка по ассистентам."
+    )
+    @GetMapping("/usage/tokens")
+    public TokenUsageSummary summary() {
+        return tokenUsageService.summary();
+    }
+
+    @Operation(
+            summary = "Потребление токенов пользователем",
+            description = "Счетчики этого экземпляра с первого запроса пользователя; " +
+                    "пользователь без запросов дольше app.usage.user-idle забывается. " +
+                    "Доступно только при app.usage.http.users-enabled=true, иначе 404."
+    )
+    @GetMapping("/usage/tokens/users/{userId}")
+    public TokenUsage userUsage(@Parameter(description = "ID пользователя", example = "1") @PathVariable Long userId) {
+        if (!usersEnabled) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        return tokenUsageService.userUsage(userId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No token usage for user " + userId));
+    }
+
+    @Operation(
+            summary = "Потребление токенов по дням",
+            description = "Суммы по сохраненным сообщениям, сгруппированные по дню (UTC) и ассистенту."
+    )
+    @GetMapping("/usage/tokens/daily")
+    public List<DailyTokenUsage> daily(
+            @Parameter(description = "Начало периода включительно (UTC), по умолчанию 30 дней назад", example = "2025-01-01")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @Parameter(description = "Конец периода не включительно (UTC), по умолчанию завтра", example = "2025-02-01")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @Parameter(description = "Только этот ассистент", example = "ACCOUNTANT")
+            @RequestParam(required = false) Assistant assistant
+    ) {
+        LocalDate end = to != null ? to : LocalDate.now(ZoneOffset.UTC).plusDays(1);
+        LocalDate start = from != null ? from : end.minusDays(31);
+        return tokenUsageService.daily(
+                start.atStartOfDay().toInstant(ZoneOffset.UTC),
+                end.atStartOfDay().toInstant(ZoneOffset.UTC),
+                assistant);
+    }
+}
@@ -0,0 +1,77 @@
+package twentuoneh.ru.requestservice.datasource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which users/sessions were written recently on this node, so that read-only
+ * transactions touching them go to the primary until the replicas have had time to catch up.
+ */
+@Component
+public class ReadYourWritesTracker {
+
+    public static final String USER = "user";
+    public static final String SESSION = "session";
+
+    private static final int PURGE_THRESHOLD = 10_000;
+
+    private final ConcurrentHashMap<Key, Long> lastWrites = new ConcurrentHashMap<>();
+    private final ThreadLocal<Boolean> pinnedToPrimary = new ThreadLocal<>();
+    private final long windowNanos;
+
+    public ReadYourWritesTracker(@Value("${app.datasource.routing.read-your-writes-window:5s}") Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    public void markWritten(String scope, Long id) {
+        if (id == null) return;
+        Key key = new Key(scope, id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    record(key);
+                }
+            });
+        } else {
+            record(key);
+        }
+    }
+
+    /**
+     * Must be called inside the read-only transaction before its first query.
+     */
+    public void pinIfRecentlyWritten(String scope, Long id) {
+        if (id == null || !TransactionSynchronizationManager.isSynchronizationActive()) return;
+        Long writtenAt = lastWrites.get(new Key(scope, id));
+        if (writtenAt == null || System.nanoTime() - writtenAt > windowNanos) return;
+
+        pinnedToPrimary.set(Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                pinnedToPrimary.remove();
+            }
+        });
+    }
+
+    public boolean isPinnedToPrimary() {
+        return Boolean.TRUE.equals(pinnedToPrimary.get());
+    }
+
+    private void record(Key key) {
+        long now = System.nanoTime();
+        lastWrites.put(key, now);
+        if (lastWrites.size() > PURGE_THRESHOLD) {
+            lastWrites.values().removeIf(writtenAt -> now - writtenAt > windowNanos);
+        }
+    }
+
+    private record Key(String scope, Long id) {
+    }
+}
@@ -0,0 +1,139 @@
+package twentuoneh.ru.requestservice.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions to a healthy replica (round robin) and everything else to the primary.
+ * Must be wrapped in a LazyConnectionDataSourceProxy: the lookup key is only known once the transaction has started.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    public static final String PRIMARY = "primary";
+
+    private static final String LAG_QUERY = """
+            select case
+                       when pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0
+                       else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()), 0)
+                   end""";
+
+    private final List<Replica> replicas;
+    private final ReadYourWritesTracker readYourWritesTracker;
+    private final Duration maxReplicaLag;
+    private final Counter primaryCounter;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(HikariDataSource primary,
+                                    List<HikariDataSource> replicaPools,
+                                    ReadYourWritesTracker readYourWritesTracker,
+                                    Duration maxReplicaLag,
+                                    MeterRegistry meterRegistry) {
+        this.readYourWritesTracker = readYourWritesTracker;
+        this.maxReplicaLag = maxReplicaLag;
+        this.primaryCounter = routedCounter(meterRegistry, PRIMARY);
+        this.replicas = replicaPools.stream()
+                .map(pool -> new Replica(pool, routedCounter(meterRegistry, pool.getPoolName())))
+                .toList();
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (Replica replica : replicas) {
+            targets.put(replica.name(), replica.pool);
+            Gauge.builder("datasource.replica.lag", replica, r -> r.lagSeconds)
+                    .tag("target", replica.name())
+                    .baseUnit("seconds")
+                    .description("Replication lag of the replica as last measured")
+                    .register(meterRegistry);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                || readYourWritesTracker.isPinnedToPrimary()) {
+            primaryCounter.increment();
+            return PRIMARY;
+        }
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                replica.counter.increment();
+                return replica.name();
+            }
+        }
+        primaryCounter.increment();
+        return PRIMARY;
+    }
+
+    @Scheduled(fixedDelayString = "${app.datasource.routing.lag-check-interval-ms:5000}")
+    public void checkReplicaLag() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.pool.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(LAG_QUERY)) {
+                rs.next();
+                replica.lagSeconds = rs.getDouble(1);
+                boolean healthy = replica.lagSeconds * 1000 <= maxReplicaLag.toMillis();
+                if (healthy != replica.healthy) {
+                    log.warn("Replica {} is {} (lag {} s)", replica.name(), healthy ? "back in rotation" : "out of rotation", replica.lagSeconds);
+                }
+                replica.healthy = healthy;
+            } catch (Exception ex) {
+                if (replica.healthy) {
+                    log.warn("Replica {} is out of rotation: {}", replica.name(), ex.getMessage());
+                }
+                replica.healthy = false;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        // the primary pool is a bean of its own and is closed by the context
+        replicas.forEach(replica -> replica.pool.close());
+    }
+
+    private static Counter routedCounter(MeterRegistry meterRegistry, String target) {
+        return Counter.builder("datasource.routing.connections")
+                .tag("target", target)
+                .description("Connections handed out per routing target")
+                .register(meterRegistry);
+    }
+
+    private static final class Replica {
+        private final HikariDataSource pool;
+        private final Counter counter;
+        private volatile boolean healthy = true;
+        private volatile double lagSeconds;
+
+        private Replica(HikariDataSource pool, Counter counter) {
+            this.pool = pool;
+            this.counter = counter;
+        }
+
+        private String name() {
+            return pool.getPoolName();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package twentuoneh.ru.requestservice.dto;
+
+import twentuoneh.ru.requestservice.enums.Assistant;
+
+import java.time.LocalDate;
+
+/**
+ * Token usage of one assistant over one UTC day, computed from stored messages.
+ */
+public record DailyTokenUsage(
+        LocalDate day,
+        Assistant assistant,
+        long generations,
+        long promptTokens,
+        long completionTokens
+) {
+}
@@ -0,0 +1,23 @@
+package twentuoneh.ru.requestservice.dto;
+
+import twentuoneh.ru.requestservice.enums.Assistant;
+import twentuoneh.ru.requestservice.enums.ChatRole;
+import twentuoneh.ru.requestservice.enums.MessageStatus;
+
+import java.time.Instant;
+
+/**
+ * One line of the conversation export: a message flattened together with its session.
+ */
+public record MessageExportRow(
+        Long messageId,
+        Long sessionId,
+        Integer seq,
+        Long userId,
+        Assistant assistant,
+        ChatRole role,
+        MessageStatus status,
+        Instant timestamp,
+        String text
+) {
+}
@@ -0,0 +1,19 @@
+package twentuoneh.ru.requestservice.dto;
+
+/**
+ * Token usage accumulated since the service started.
+ *
+ * @param promptToCompletionRatio prompt tokens per generated token, 0 if nothing was generated
+ */
+public record TokenUsage(
+        long generations,
+        long promptTokens,
+        long completionTokens,
+        double promptToCompletionRatio
+) {
+
+    public static TokenUsage of(long generations, long promptTokens, long completionTokens) {
+        return new TokenUsage(generations, promptTokens, completionTokens,
+                completionTokens > 0 ? (double) promptTokens / completionTokens : 0);
+    }
+}
@@ -0,0 +1,21 @@
+package twentuoneh.ru.requestservice.dto;
+
+import twentuoneh.ru.requestservice.enums.Assistant;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * In-memory token usage of this instance.
+ *
+ * @param promptTokensPerSecond     prompt tokens per second over the last sampling interval
+ * @param completionTokensPerSecond generated tokens per second over the last sampling interval
+ */
+public record TokenUsageSummary(
+        Instant since,
+        double promptTokensPerSecond,
+        double completionTokensPerSecond,
+        TokenUsage total,
+        Map<Assistant, TokenUsage> byAssistant
+) {
+}
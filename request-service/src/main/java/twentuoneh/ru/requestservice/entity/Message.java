@@ -2,8 +2,10 @@ package twentuoneh.ru.requestservice.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import twentuoneh.ru.requestservice.enums.ChatRole;
+import twentuoneh.ru.requestservice.enums.MessageStatus;
 
-import java.time.LocalDateTime;
+import java.time.Instant;
 
 @Entity
 @Table(name = "\"Message\"")
@@ -22,12 +24,27 @@ public class Message {
     private Session session;
 
     @Column(nullable = false)
-    private String role;
+    private ChatRole role;
 
     @Column(nullable = false)
     private String text;
 
+    // position in the session, assigned by MessageService.createMessage
+    @Column(nullable = false)
+    private Integer seq;
+
     @Column(nullable = false)
     @Builder.Default
-    private LocalDateTime timestamp = LocalDateTime.now();
+    private Instant timestamp = Instant.now();
+
+    @Column(nullable = false)
+    @Builder.Default
+    private MessageStatus status = MessageStatus.COMPLETED;
+
+    // reported by the LLM backend for assistant messages, null when unknown
+    @Column(name = "\"promptTokens\"")
+    private Integer promptTokens;
+
+    @Column(name = "\"completionTokens\"")
+    private Integer completionTokens;
 }
@@ -2,6 +2,7 @@ package twentuoneh.ru.requestservice.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import twentuoneh.ru.requestservice.enums.Assistant;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -22,8 +23,8 @@ public class Session {
     @JoinColumn(name = "\"userId\"", nullable = false)
     private User user;
 
-    @Column(name = "\"assistantRole\"", nullable = false)
-    private String assistantRole;
+    @Column(nullable = false)
+    private Assistant assistant;
 
     @OneToMany(mappedBy = "session", cascade = CascadeType.ALL)
     private List<Message> messages = new ArrayList<>();
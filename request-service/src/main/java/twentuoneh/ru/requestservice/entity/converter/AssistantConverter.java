@@ -0,0 +1,19 @@
+package twentuoneh.ru.requestservice.entity.converter;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import twentuoneh.ru.requestservice.enums.Assistant;
+
+@Converter(autoApply = true)
+public class AssistantConverter implements AttributeConverter<Assistant, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(Assistant attribute) {
+        return attribute != null ? attribute.code() : null;
+    }
+
+    @Override
+    public Assistant convertToEntityAttribute(Short dbData) {
+        return dbData != null ? Assistant.fromCode(dbData) : null;
+    }
+}
@@ -0,0 +1,19 @@
+package twentuoneh.ru.requestservice.entity.converter;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import twentuoneh.ru.requestservice.enums.ChatRole;
+
+@Converter(autoApply = true)
+public class ChatRoleConverter implements AttributeConverter<ChatRole, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(ChatRole attribute) {
+        return attribute != null ? attribute.code() : null;
+    }
+
+    @Override
+    public ChatRole convertToEntityAttribute(Short dbData) {
+        return dbData != null ? ChatRole.fromCode(dbData) : null;
+    }
+}
@@ -0,0 +1,19 @@
+package twentuoneh.ru.requestservice.entity.converter;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import twentuoneh.ru.requestservice.enums.MessageStatus;
+
+@Converter(autoApply = true)
+public class MessageStatusConverter implements AttributeConverter<MessageStatus, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(MessageStatus attribute) {
+        return attribute != null ? attribute.code() : null;
+    }
+
+    @Override
+    public MessageStatus convertToEntityAttribute(Short dbData) {
+        return dbData != null ? MessageStatus.fromCode(dbData) : null;
+    }
+}
@@ -1,15 +1,33 @@
 package twentuoneh.ru.requestservice.enums;
 
 public enum Assistant {
-    ACCOUNTANT, //бухгалтер
-    LAWYER,     //юрист
-    MARKETING,
-    COPYWRITER,
-    HR,
-    MANAGER,
-    CONSULTANT,
-    DESIGNER,
-    DEFAULT;
+    ACCOUNTANT(1), //бухгалтер
+    LAWYER(2),     //юрист
+    MARKETING(3),
+    COPYWRITER(4),
+    HR(5),
+    MANAGER(6),
+    CONSULTANT(7),
+    DESIGNER(8),
+    DEFAULT(0);
+
+    // stored in "Session".assistant, never reuse a code
+    private final short code;
+
+    Assistant(int code) {
+        this.code = (short) code;
+    }
+
+    public short code() {
+        return code;
+    }
+
+    public static Assistant fromCode(short code) {
+        for (Assistant assistant : values()) {
+            if (assistant.code == code) return assistant;
+        }
+        throw new IllegalArgumentException("Unknown assistant code " + code);
+    }
 
     public String systemPrompt() {
         return switch (this) {
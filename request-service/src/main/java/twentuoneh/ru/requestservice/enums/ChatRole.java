@@ -0,0 +1,30 @@
+package twentuoneh.ru.requestservice.enums;
+
+public enum ChatRole {
+    USER(1),
+    ASSISTANT(2),
+    SYSTEM(3);
+
+    // stored in "Message".role, never reuse a code
+    private final short code;
+
+    ChatRole(int code) {
+        this.code = (short) code;
+    }
+
+    public short code() {
+        return code;
+    }
+
+    /** Role name in the chat completions API. */
+    public String apiName() {
+        return name().toLowerCase();
+    }
+
+    public static ChatRole fromCode(short code) {
+        for (ChatRole role : values()) {
+            if (role.code == code) return role;
+        }
+        throw new IllegalArgumentException("Unknown chat role code " + code);
+    }
+}
@@ -0,0 +1,24 @@
+package twentuoneh.ru.requestservice.enums;
+
+public enum MessageStatus {
+    COMPLETED(1),
+    CANCELLED(2);  //клиент отключился или истек таймаут до конца генерации
+
+    // stored in "Message".status, never reuse a code
+    private final short code;
+
+    MessageStatus(int code) {
+        this.code = (short) code;
+    }
+
+    public short code() {
+        return code;
+    }
+
+    public static MessageStatus fromCode(short code) {
+        for (MessageStatus status : values()) {
+            if (status.code == code) return status;
+        }
+        throw new IllegalArgumentException("Unknown message status code " + code);
+    }
+}
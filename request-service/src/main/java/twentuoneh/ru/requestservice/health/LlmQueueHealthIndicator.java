@@ -0,0 +1,44 @@
+package twentuoneh.ru.requestservice.health;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+import twentuoneh.ru.requestservice.service.llm.LlmScheduler;
+
+/**
+ * Part of the readiness group: the instance reports OUT_OF_SERVICE while its LLM queue is saturated,
+ * so the load balancer routes new requests elsewhere. It comes back only once the queue has drained
+ * below the lower mark, to avoid flapping around a single threshold.
+ */
+@Component
+public class LlmQueueHealthIndicator implements HealthIndicator {
+
+    private final LlmScheduler llmScheduler;
+    private final int maxQueueDepth;
+    private final int resumeQueueDepth;
+    private volatile boolean saturated;
+
+    public LlmQueueHealthIndicator(LlmScheduler llmScheduler,
+                                   @Value("${app.readiness.max-llm-queue-depth:50}") int maxQueueDepth,
+                                   @Value("${app.readiness.resume-llm-queue-depth:25}") int resumeQueueDepth) {
+        this.llmScheduler = llmScheduler;
+        this.maxQueueDepth = maxQueueDepth;
+        this.resumeQueueDepth = resumeQueueDepth;
+    }
+
+    @Override
+    public Health health() {
+        int queueDepth = llmScheduler.getQueueDepth();
+        if (queueDepth > maxQueueDepth) {
+            saturated = true;
+        } else if (queueDepth <= resumeQueueDepth) {
+            saturated = false;
+        }
+        Health.Builder builder = saturated ? Health.outOfService() : Health.up();
+        return builder
+                .withDetail("queueDepth", queueDepth)
+                .withDetail("maxQueueDepth", maxQueueDepth)
+                .build();
+    }
+}
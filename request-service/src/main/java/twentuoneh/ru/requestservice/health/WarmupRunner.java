@@ -0,0 +1,100 @@
+package twentuoneh.ru.requestservice.health;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import twentuoneh.ru.requestservice.dto.MessageRequest;
+import twentuoneh.ru.requestservice.dto.MessageResponse;
+import twentuoneh.ru.requestservice.enums.Assistant;
+import twentuoneh.ru.requestservice.service.llm.LlmClient;
+import twentuoneh.ru.requestservice.service.repos.MessageService;
+import twentuoneh.ru.requestservice.service.repos.SessionService;
+import twentuoneh.ru.requestservice.service.repos.UserService;
+
+/**
+ * Exercises the hot paths before the instance takes traffic. Readiness switches to ACCEPTING_TRAFFIC
+ * only after all application runners have finished, so the probe stays down until this is done.
+ * Failures are logged and do not stop the startup.
+ */
+@Slf4j
+@Component
+public class WarmupRunner implements ApplicationRunner {
+
+    private static final Long MISSING_ID = -1L;
+
+    private final ObjectMapper objectMapper;
+    private final UserService userService;
+    private final SessionService sessionService;
+    private final MessageService messageService;
+    private final LlmClient llmClient;
+    private final int iterations;
+    private final boolean enabled;
+
+    public WarmupRunner(ObjectMapper objectMapper,
+                        UserService userService,
+                        SessionService sessionService,
+                        MessageService messageService,
+                        LlmClient llmClient,
+                        @Value("${app.warmup.iterations:200}") int iterations,
+                        @Value("${app.warmup.enabled:true}") boolean enabled) {
+        this.objectMapper = objectMapper;
+        this.userService = userService;
+        this.sessionService = sessionService;
+        this.messageService = messageService;
+        this.llmClient = llmClient;
+        this.iterations = iterations;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        // checked here rather than as a bean condition, so that it can still be switched off in an AOT image
+        if (!enabled) {
+            log.info("Warm-up disabled");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        step("JSON codec", this::warmUpJson);
+        step("repositories", this::warmUpRepositories);
+        step("LLM backends", llmClient::warmUp);
+        log.info("Warm-up finished in {} ms", System.currentTimeMillis() - start);
+    }
+
+    private void warmUpJson() throws Exception {
+        MessageRequest request = new MessageRequest();
+        request.setMessage("warm-up");
+        request.setAssistant(Assistant.DEFAULT);
+        request.setUserId(MISSING_ID);
+        MessageResponse response = new MessageResponse("warm-up", MISSING_ID);
+        for (int i = 0; i < iterations; i++) {
+            objectMapper.readValue(objectMapper.writeValueAsBytes(request), MessageRequest.class);
+            objectMapper.readValue(objectMapper.writeValueAsBytes(response), MessageResponse.class);
+        }
+    }
+
+    private void warmUpRepositories() {
+        for (int i = 0; i < Math.max(1, iterations / 20); i++) {
+            userService.getUserById(MISSING_ID);
+            sessionService.getSessionById(MISSING_ID);
+            messageService.findBySessionIdOrderBySeqAsc(MISSING_ID);
+        }
+    }
+
+    private static void step(String name, WarmupStep step) {
+        long start = System.currentTimeMillis();
+        try {
+            step.run();
+            log.info("Warm-up of {} done in {} ms", name, System.currentTimeMillis() - start);
+        } catch (Exception ex) {
+            log.warn("Warm-up of {} failed after {} ms: {}", name, System.currentTimeMillis() - start, ex.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface WarmupStep {
+        void run() throws Exception;
+    }
+}
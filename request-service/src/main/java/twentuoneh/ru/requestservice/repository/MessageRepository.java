@@ -1,14 +1,39 @@
 package twentuoneh.ru.requestservice.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import twentuoneh.ru.requestservice.dto.MessageExportRow;
 import twentuoneh.ru.requestservice.entity.Message;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import twentuoneh.ru.requestservice.enums.Assistant;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
     List<Message> findBySession_IdOrderByTimestampAsc(Long sessionId);
+    List<Message> findBySession_IdOrderBySeqAsc(Long sessionId);
     List<Message> findBySession_Id(Long sessionId, Sort sort);
+
+    // DTO projection over a server-side cursor: nothing is kept in the persistence context,
+    // must be consumed inside a transaction and closed
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("""
+            select new twentuoneh.ru.requestservice.dto.MessageExportRow(
+                m.id, s.id, m.seq, s.user.id, s.assistant, m.role, m.status, m.timestamp, m.text)
+            from Message m join m.session s
+            where m.timestamp >= :from and m.timestamp < :to and s.assistant in :assistants
+            order by m.timestamp, m.id
+            """)
+    Stream<MessageExportRow> streamForExport(@Param("from") Instant from,
+                                             @Param("to") Instant to,
+                                             @Param("assistants") Collection<Assistant> assistants);
 }
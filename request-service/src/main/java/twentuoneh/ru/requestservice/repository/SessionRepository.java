@@ -1,9 +1,15 @@
 package twentuoneh.ru.requestservice.repository;
 
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import twentuoneh.ru.requestservice.entity.Session;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface SessionRepository extends JpaRepository<Session, Long> {
+
+    // atomic row-locked increment, the lock is held until the message insert commits
+    @Query(value = "update \"Session\" set \"lastSeq\" = \"lastSeq\" + 1 where id = :id returning \"lastSeq\"", nativeQuery = true)
+    int nextMessageSeq(@Param("id") Long sessionId);
 }
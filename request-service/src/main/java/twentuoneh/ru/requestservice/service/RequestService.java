@@ -1,27 +1,112 @@
 package twentuoneh.ru.requestservice.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
 import twentuoneh.ru.requestservice.dto.MessageRequest;
 import twentuoneh.ru.requestservice.dto.MessageResponse;
 import twentuoneh.ru.requestservice.enums.Assistant;
 import twentuoneh.ru.requestservice.service.assistants.AssistantService;
 import twentuoneh.ru.requestservice.service.assistants.AssistantServiceFactory;
 import twentuoneh.ru.requestservice.service.assistants.DefaultAssistantService;
+import twentuoneh.ru.requestservice.service.idempotency.IdempotencyService;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 @Slf4j
 @Service
 public class RequestService {
+    public static final String CANCEL_DISCONNECT = "disconnect";
+    public static final String CANCEL_TIMEOUT = "timeout";
+    public static final String CANCEL_CLIENT = "client";
+
     private final AssistantServiceFactory assistantServiceFactory;
+    private final IdempotencyService idempotencyService;
+    private final AsyncTaskExecutor requestExecutor;
+    private final MeterRegistry meterRegistry;
+    // generations started on this node with an Idempotency-Key, by scoped key
+    private final ConcurrentHashMap<String, Future<?>> keyedGenerations = new ConcurrentHashMap<>();
 
-    public RequestService(AssistantServiceFactory assistantServiceFactory) {
+    public RequestService(AssistantServiceFactory assistantServiceFactory, IdempotencyService idempotencyService,
+                          @Qualifier("applicationTaskExecutor") AsyncTaskExecutor requestExecutor,
+                          MeterRegistry meterRegistry) {
         this.assistantServiceFactory = assistantServiceFactory;
+        this.idempotencyService = idempotencyService;
+        this.requestExecutor = requestExecutor;
+        this.meterRegistry = meterRegistry;
     }
 
-    public MessageResponse sendMessage(MessageRequest message) {
+    public MessageResponse sendMessage(MessageRequest message, String idempotencyKey) {
         AssistantService assistant = assistantServiceFactory.getService(message.getAssistant());
-        return assistant.handle(message);
+        // per-user rate limits are applied by the assistant service once the user is resolved
+        return idempotencyService.execute(idempotencyKey, message, () -> assistant.handle(message));
+    }
+
+    /**
+     * Runs the turn off the servlet thread, so that it can be interrupted by {@link #cancel}.
+     */
+    public Future<?> sendMessageAsync(MessageRequest message, String idempotencyKey, DeferredResult<MessageResponse> result) {
+        String key = idempotencyKey == null || idempotencyKey.isBlank()
+                ? null
+                : IdempotencyService.scopedKey(message.getUserId(), idempotencyKey);
+        FutureTask<Void> generation = new FutureTask<>(() -> {
+            try {
+                result.setResult(sendMessage(message, idempotencyKey));
+            } catch (Exception ex) {
+                result.setErrorResult(ex);
+            }
+        }, null) {
+            @Override
+            protected void done() {
+                if (key != null) {
+                    keyedGenerations.remove(key, this);
+                }
+            }
+        };
+        // a retry attaches to the first generation for the key, which stays the one to cancel
+        if (key != null) {
+            keyedGenerations.putIfAbsent(key, generation);
+        }
+        try {
+            requestExecutor.execute(generation);
+        } catch (TaskRejectedException ex) {
+            if (key != null) {
+                keyedGenerations.remove(key, generation);
+            }
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many requests in progress");
+        }
+        return generation;
+    }
+
+    /**
+     * Cancels the generation started on this node with the given Idempotency-Key.
+     *
+     * @return false if no such generation is running here
+     */
+    public boolean cancel(Long userId, String idempotencyKey) {
+        Future<?> generation = keyedGenerations.get(IdempotencyService.scopedKey(userId, idempotencyKey));
+        return generation != null && cancel(generation, CANCEL_CLIENT);
+    }
+
+    /**
+     * Interrupts the turn: a blocked WebClient exchange is disposed, which closes the upstream connection
+     * and frees the LocalAI slot.
+     */
+    public boolean cancel(Future<?> generation, String reason) {
+        if (!generation.cancel(true)) {
+            return false;
+        }
+        meterRegistry.counter("llm.generation.cancelled", "reason", reason).increment();
+        log.info("Request cancelled: {}", reason);
+        return true;
     }
 }
@@ -9,7 +9,16 @@ import org.springframework.stereotype.Service;
 import twentuoneh.ru.requestservice.dto.ChatMessage;
 import twentuoneh.ru.requestservice.dto.MessageRequest;
 import twentuoneh.ru.requestservice.dto.MessageResponse;
+import twentuoneh.ru.requestservice.enums.ChatRole;
+import twentuoneh.ru.requestservice.enums.MessageStatus;
+import twentuoneh.ru.requestservice.service.llm.GenerationCancelledException;
+import twentuoneh.ru.requestservice.service.llm.GenerationInterruptedException;
 import twentuoneh.ru.requestservice.service.llm.LlmClient;
+import twentuoneh.ru.requestservice.service.llm.LlmCompletion;
+import twentuoneh.ru.requestservice.service.llm.LlmScheduler;
+import twentuoneh.ru.requestservice.service.ratelimit.UserRateLimiter;
+import twentuoneh.ru.requestservice.service.turns.SessionTurnLock;
+import twentuoneh.ru.requestservice.service.usage.TokenUsageService;
 import twentuoneh.ru.requestservice.service.repos.MessageService;
 import twentuoneh.ru.requestservice.service.repos.SessionService;
 import twentuoneh.ru.requestservice.service.repos.UserService;
@@ -26,27 +35,42 @@ public class DefaultAssistantService implements AssistantService {
     private final MessageService messageService;
     private final SessionService sessionService;
     private final UserService userService;
-    
+    private final LlmScheduler llmScheduler;
+    private final UserRateLimiter rateLimiter;
+    private final SessionTurnLock sessionTurnLock;
+    private final TokenUsageService tokenUsageService;
 
-    public DefaultAssistantService(LlmClient llm, UserService userService, SessionService sessionService, MessageService messageService) {
+    public DefaultAssistantService(LlmClient llm, UserService userService, SessionService sessionService, MessageService messageService,
+                                   LlmScheduler llmScheduler, UserRateLimiter rateLimiter, SessionTurnLock sessionTurnLock,
+                                   TokenUsageService tokenUsageService) {
         this.llm = llm;
         this.userService = userService;
         this.sessionService = sessionService;
         this.messageService = messageService;
+        this.llmScheduler = llmScheduler;
+        this.rateLimiter = rateLimiter;
+        this.sessionTurnLock = sessionTurnLock;
+        this.tokenUsageService = tokenUsageService;
     }
 
     @Override
     public MessageResponse handle(MessageRequest request) {
-        var assistant = request.getAssistant().assistantName();
         var text = request.getMessage();
 
         User user = findOrCreateUser(request);
+        // keyed by the resolved user: requests without userId must not share one anonymous bucket
+        rateLimiter.acquireRequest(user.getId());
         Session session = findOrCreateSession(request, user);
-        saveMessage(session, assistant, text);
 
-        String assistantResponse = generateAssistantResponse(session, request);
-        saveMessage(session, "assistant", assistantResponse);
-        return new MessageResponse(assistantResponse, session.getId());
+        // one turn per session at a time: the next one sees the complete transcript of this one
+        return sessionTurnLock.withLock(session.getId(), () -> {
+            List<ChatMessage> history = loadHistory(session);
+            saveMessage(session, ChatRole.USER, text);
+
+            LlmCompletion completion = generateAssistantResponse(user.getId(), session, history, request);
+            saveAssistantMessage(session, completion);
+            return new MessageResponse(completion.content(), session.getId());
+        });
     }
 
     private User findOrCreateUser(MessageRequest request) {
@@ -81,30 +105,85 @@ public class DefaultAssistantService implements AssistantService {
 
         Session session = Session.builder()
                 .user(user)
-                .assistantRole(request.getAssistant().assistantName())
+                .assistant(request.getAssistant())
                 .build();
         return sessionService.createSession(session);
     }
 
-    private Message saveMessage(Session session, String role, String text) {
+    private Message saveMessage(Session session, ChatRole role, String text) {
+        return saveMessage(session, role, text, MessageStatus.COMPLETED);
+    }
+
+    private Message saveMessage(Session session, ChatRole role, String text, MessageStatus status) {
         Message message = Message.builder().
                 session(session).
                 role(role).
                 text(text).
+                status(status).
+                build();
+        return messageService.createMessage(message);
+    }
+
+    private Message saveAssistantMessage(Session session, LlmCompletion completion) {
+        Message message = Message.builder().
+                session(session).
+                role(ChatRole.ASSISTANT).
+                text(completion.content()).
+                promptTokens(completion.hasUsage() ? (int) completion.promptTokens() : null).
+                completionTokens(completion.hasUsage() ? (int) completion.completionTokens() : null).
                 build();
         return messageService.createMessage(message);
     }
 
-    private String generateAssistantResponse(Session session, MessageRequest userMessage) {
-        List<Message> history = messageService.findBySessionIdOrderByTimestampAsc(session.getId());
-        List<ChatMessage> chatHistory = history.stream()
-                .map(msg -> new ChatMessage(msg.getRole(), msg.getText()))
+    // history is loaded before the new user message is saved: the client appends it itself
+    private List<ChatMessage> loadHistory(Session session) {
+        List<Message> history = messageService.findBySessionIdOrderBySeqAsc(session.getId());
+        return history.stream()
+                .filter(msg -> msg.getStatus() != MessageStatus.CANCELLED)
+                .map(msg -> new ChatMessage(msg.getRole().apiName(), msg.getText()))
                 .collect(Collectors.toList());
+    }
+
+    private LlmCompletion generateAssistantResponse(Long userId, Session session, List<ChatMessage> chatHistory,
+                                                    MessageRequest userMessage) {
+        LlmCompletion completion;
+        try {
+            completion = llmScheduler.execute(userId, userMessage.getAssistant(), () -> llm.generate(
+                    session.getId(),
+                    session.getAssistant(),
+                    chatHistory,
+                    userMessage
+            ));
+        } catch (RuntimeException ex) {
+            // interrupted by RequestService.cancel: the upstream exchange is already disposed
+            if (!isCancellation(ex)) throw ex;
+            String partial = partialContent(ex);
+            log.info("Generation for session {} cancelled after {} characters", session.getId(), partial.length());
+            saveMessage(session, ChatRole.ASSISTANT, partial, MessageStatus.CANCELLED);
+            throw new GenerationCancelledException(session.getId(), ex);
+        }
+        rateLimiter.recordGeneratedTokens(userId, completion.completionTokens());
+        if (completion.hasUsage()) {
+            tokenUsageService.record(userId, session.getAssistant(),
+                    completion.promptTokens(), completion.completionTokens());
+        }
+        return completion;
+    }
 
-        return llm.generate(
-                session.getAssistantRole(),
-                chatHistory,
-                userMessage
-        );
+    // clears the interrupt flag, so that the cancelled turn can still be written to the database
+    private static boolean isCancellation(Throwable ex) {
+        boolean interrupted = Thread.interrupted();
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException || cause instanceof GenerationInterruptedException) return true;
+        }
+        return interrupted;
+    }
+
+    // empty when the turn was cancelled while still queued for a slot
+    private static String partialContent(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof GenerationInterruptedException interrupted) return interrupted.getPartialContent();
+        }
+        return "";
     }
 }
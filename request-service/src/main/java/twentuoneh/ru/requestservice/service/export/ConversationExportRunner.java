@@ -0,0 +1,80 @@
+package twentuoneh.ru.requestservice.service.export;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+import twentuoneh.ru.requestservice.enums.Assistant;
+import twentuoneh.ru.requestservice.enums.ExportFormat;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+/**
+ * Nightly dump without the web server:
+ * java -jar app.jar --spring.main.web-application-type=none --app.warmup.enabled=false
+ *      --app.export.output=/data/messages.ndjson.gz [--app.export.format=CSV] [--app.export.from=2025-01-01]
+ *      [--app.export.to=2025-01-02] [--app.export.assistant=LAWYER]
+ * A ".gz" output is gzip-compressed. The application exits when the file is written.
+ */
+@Slf4j
+@Component
+public class ConversationExportRunner implements ApplicationRunner {
+
+    private final ConversationExportService exportService;
+    private final ConfigurableApplicationContext applicationContext;
+
+    @Value("${app.export.output:}")
+    private String output;
+
+    @Value("${app.export.format:NDJSON}")
+    private ExportFormat format;
+
+    @Value("${app.export.from:}")
+    private String from;
+
+    @Value("${app.export.to:}")
+    private String to;
+
+    @Value("${app.export.assistant:#{null}}")
+    private Assistant assistant;
+
+    public ConversationExportRunner(ConversationExportService exportService,
+                                    ConfigurableApplicationContext applicationContext) {
+        this.exportService = exportService;
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        // not a bean condition: an AOT image would fix it at build time
+        if (output.isBlank()) {
+            return;
+        }
+        LocalDate start = from.isBlank() ? LocalDate.EPOCH : LocalDate.parse(from);
+        LocalDate end = to.isBlank() ? LocalDate.now(ZoneOffset.UTC).plusDays(1) : LocalDate.parse(to);
+        Path file = Path.of(output);
+        boolean gzip = output.endsWith(".gz");
+
+        int exitCode = 0;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024)) {
+            long count = exportService.export(format,
+                    start.atStartOfDay().toInstant(ZoneOffset.UTC),
+                    end.atStartOfDay().toInstant(ZoneOffset.UTC),
+                    assistant, gzip, out);
+            log.info("Export of {} messages written to {}", count, output);
+        } catch (Exception ex) {
+            log.error("Export to {} failed: {}", output, ex.getMessage(), ex);
+            exitCode = 1;
+        }
+        int code = exitCode;
+        System.exit(SpringApplication.exit(applicationContext, () -> code));
+    }
+}
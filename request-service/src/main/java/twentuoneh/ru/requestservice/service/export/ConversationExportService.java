@@ -0,0 +1,118 @@
+package twentuoneh.ru.requestservice.service.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import twentuoneh.ru.requestservice.dto.MessageExportRow;
+import twentuoneh.ru.requestservice.enums.Assistant;
+import twentuoneh.ru.requestservice.enums.ExportFormat;
+import twentuoneh.ru.requestservice.repository.MessageRepository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams all messages of a period to an output with constant memory:
+ * rows come from a server-side cursor and are written out one by one.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ConversationExportService {
+
+    private static final String CSV_HEADER = "messageId,sessionId,seq,userId,assistant,role,status,timestamp,text";
+
+    private final MessageRepository messageRepository;
+    private final ObjectMapper objectMapper;
+
+    @Transactional(readOnly = true)
+    public long export(ExportFormat format, Instant from, Instant to, Assistant assistant, boolean gzip,
+                       OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        Set<Assistant> assistants = assistant != null ? EnumSet.of(assistant) : EnumSet.allOf(Assistant.class);
+        OutputStream target = gzip ? new GZIPOutputStream(out, 64 * 1024) : out;
+
+        long count;
+        try (Stream<MessageExportRow> rows = messageRepository.streamForExport(from, to, assistants)) {
+            count = switch (format) {
+                case NDJSON -> writeNdjson(rows.iterator(), target);
+                case CSV -> writeCsv(rows.iterator(), target);
+            };
+        }
+        if (target instanceof GZIPOutputStream gzipStream) {
+            gzipStream.finish();
+        }
+        target.flush();
+        log.info("Exported {} messages ({}, {} - {}, assistant {}) in {} ms",
+                count, format, from, to, assistant, System.currentTimeMillis() - start);
+        return count;
+    }
+
+    private long writeNdjson(Iterator<MessageExportRow> rows, OutputStream out) throws IOException {
+        long count = 0;
+        SequenceWriter writer = objectMapper.writer()
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .withRootValueSeparator("\n")
+                .writeValues(out);
+        while (rows.hasNext()) {
+            writer.write(rows.next());
+            count++;
+        }
+        writer.flush();
+        if (count > 0) {
+            out.write('\n');
+        }
+        return count;
+    }
+
+    private long writeCsv(Iterator<MessageExportRow> rows, OutputStream out) throws IOException {
+        long count = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        while (rows.hasNext()) {
+            MessageExportRow row = rows.next();
+            writer.write(String.valueOf(row.messageId()));
+            writer.write(',');
+            writer.write(String.valueOf(row.sessionId()));
+            writer.write(',');
+            writer.write(String.valueOf(row.seq()));
+            writer.write(',');
+            writer.write(String.valueOf(row.userId()));
+            writer.write(',');
+            writer.write(row.assistant().name());
+            writer.write(',');
+            writer.write(row.role().name());
+            writer.write(',');
+            writer.write(row.status().name());
+            writer.write(',');
+            writer.write(row.timestamp().toString());
+            writer.write(',');
+            writeCsvField(writer, row.text());
+            writer.write('\n');
+            count++;
+        }
+        writer.flush();
+        return count;
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,13 @@
+package twentuoneh.ru.requestservice.service.idempotency;
+
+import twentuoneh.ru.requestservice.dto.MessageResponse;
+
+/**
+ * @param response null while the first request with this key is still generating
+ */
+public record IdempotencyRecord(String fingerprint, MessageResponse response) {
+
+    public boolean isCompleted() {
+        return response != null;
+    }
+}
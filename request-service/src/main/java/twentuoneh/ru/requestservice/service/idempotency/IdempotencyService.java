@@ -0,0 +1,186 @@
+package twentuoneh.ru.requestservice.service.idempotency;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import twentuoneh.ru.requestservice.dto.MessageRequest;
+import twentuoneh.ru.requestservice.dto.MessageResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Makes /request safe to retry: a request repeated with the same Idempotency-Key
+ * attaches to the generation still running for it, or gets the stored response back.
+ */
+@Slf4j
+@Service
+public class IdempotencyService {
+
+    private static final long POLL_INTERVAL_MILLIS = 500;
+
+    private final IdempotencyStore store;
+    private final Duration ttl;
+    private final Duration lease;
+    private final Duration waitTimeout;
+    private final ConcurrentHashMap<String, InFlight> inFlight = new ConcurrentHashMap<>();
+    // keys reserved by this node whose generation is still running, their lease is renewed until it ends
+    private final Set<String> owned = ConcurrentHashMap.newKeySet();
+
+    public IdempotencyService(IdempotencyStore store,
+                              @Value("${app.idempotency.ttl:24h}") Duration ttl,
+                              @Value("${app.idempotency.lease:60s}") Duration lease,
+                              @Value("${app.idempotency.renew-interval-ms:15000}") long renewIntervalMillis,
+                              @Value("${app.idempotency.wait-timeout:180s}") Duration waitTimeout) {
+        // a lease that can run out between two renewals would let another node start a duplicate generation
+        if (lease.toMillis() < 2 * renewIntervalMillis) {
+            throw new IllegalStateException("app.idempotency.lease (" + lease
+                    + ") must be at least twice app.idempotency.renew-interval-ms (" + renewIntervalMillis + ")");
+        }
+        this.store = store;
+        this.ttl = ttl;
+        this.lease = lease;
+        this.waitTimeout = waitTimeout;
+    }
+
+    /**
+     * Keys are scoped by user, so that two users cannot collide on the same Idempotency-Key.
+     */
+    public static String scopedKey(Long userId, String idempotencyKey) {
+        return userId + ":" + idempotencyKey;
+    }
+
+    public MessageResponse execute(String idempotencyKey, MessageRequest request, Supplier<MessageResponse> action) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return action.get();
+        }
+        String key = scopedKey(request.getUserId(), idempotencyKey);
+        String fingerprint = fingerprint(request);
+
+        InFlight mine = new InFlight(fingerprint, new CompletableFuture<>());
+        InFlight running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            checkFingerprint(running.fingerprint, fingerprint);
+            log.info("Idempotency key {} is in flight, attaching", key);
+            return await(running.result);
+        }
+
+        boolean reserved = false;
+        try {
+            Optional<MessageResponse> stored = reserveOrWait(key, fingerprint);
+            if (stored.isPresent()) {
+                log.info("Idempotency key {} already completed, returning stored response", key);
+                mine.result.complete(stored.get());
+                return stored.get();
+            }
+            reserved = true;
+            owned.add(key);
+
+            MessageResponse response = action.get();
+            store.complete(key, response, ttl);
+            mine.result.complete(response);
+            return response;
+        } catch (RuntimeException ex) {
+            if (reserved) {
+                store.release(key);
+            }
+            mine.result.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            owned.remove(key);
+            inFlight.remove(key, mine);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.idempotency.renew-interval-ms:15000}")
+    public void renewLeases() {
+        List<String> keys = List.copyOf(owned);
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            store.renew(keys, lease);
+        } catch (RuntimeException ex) {
+            log.warn("Could not renew {} idempotency leases: {}", keys.size(), ex.getMessage());
+        }
+    }
+
+    // empty: the key is ours to generate; present: another request (possibly on another node) already answered it
+    private Optional<MessageResponse> reserveOrWait(String key, String fingerprint) {
+        long deadline = System.nanoTime() + waitTimeout.toNanos();
+        while (true) {
+            Optional<IdempotencyRecord> existing = store.reserve(key, fingerprint, lease);
+            if (existing.isEmpty()) {
+                return Optional.empty();
+            }
+            checkFingerprint(existing.get().fingerprint(), fingerprint);
+            if (existing.get().isCompleted()) {
+                return Optional.of(existing.get().response());
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "Request with this Idempotency-Key is still being processed");
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for idempotent request", ex);
+            }
+        }
+    }
+
+    private MessageResponse await(CompletableFuture<MessageResponse> result) {
+        try {
+            return result.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Request with this Idempotency-Key is still being processed");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for idempotent request", ex);
+        }
+    }
+
+    private static void checkFingerprint(String expected, String actual) {
+        if (!Objects.equals(expected, actual)) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                    "Idempotency-Key was already used with a different request body");
+        }
+    }
+
+    private static String fingerprint(MessageRequest request) {
+        String source = request.getUserId() + "\n" + request.getSessionId() + "\n"
+                + request.getAssistant() + "\n" + request.getMessage();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private record InFlight(String fingerprint, CompletableFuture<MessageResponse> result) {
+    }
+}
@@ -0,0 +1,29 @@
+package twentuoneh.ru.requestservice.service.idempotency;
+
+import twentuoneh.ru.requestservice.dto.MessageResponse;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+
+public interface IdempotencyStore {
+
+    /**
+     * Reserves the key for the caller. The reservation only lives for the lease, so a key whose owner died
+     * mid-generation becomes free again; the owner {@link #renew renews} it while it works,
+     * {@link #complete} extends it to the full TTL.
+     *
+     * @return empty if the key was free (the caller owns the generation), otherwise the live record
+     */
+    Optional<IdempotencyRecord> reserve(String key, String fingerprint, Duration lease);
+
+    Optional<IdempotencyRecord> find(String key);
+
+    /** Extends unfinished reservations that are still being worked on by a lease from now. */
+    void renew(Collection<String> keys, Duration lease);
+
+    void complete(String key, MessageResponse response, Duration ttl);
+
+    /** Frees a reservation whose generation failed, so that a retry runs it again. */
+    void release(String key);
+}
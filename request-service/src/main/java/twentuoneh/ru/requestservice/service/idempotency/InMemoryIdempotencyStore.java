@@ -0,0 +1,63 @@
+package twentuoneh.ru.requestservice.service.idempotency;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import twentuoneh.ru.requestservice.dto.MessageResponse;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InMemoryIdempotencyStore implements IdempotencyStore {
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<IdempotencyRecord> reserve(String key, String fingerprint, Duration lease) {
+        long now = System.nanoTime();
+        Entry reserved = new Entry(new IdempotencyRecord(fingerprint, null), now + lease.toNanos());
+        Entry current = entries.compute(key, (k, existing) ->
+                existing == null || existing.isExpired(now) ? reserved : existing);
+        return current == reserved ? Optional.empty() : Optional.of(current.record);
+    }
+
+    @Override
+    public Optional<IdempotencyRecord> find(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.isExpired(System.nanoTime())) return Optional.empty();
+        return Optional.of(entry.record);
+    }
+
+    @Override
+    public void renew(Collection<String> keys, Duration lease) {
+        long expiresAt = System.nanoTime() + lease.toNanos();
+        for (String key : keys) {
+            entries.computeIfPresent(key, (k, existing) ->
+                    existing.record.isCompleted() ? existing : new Entry(existing.record, expiresAt));
+        }
+    }
+
+    @Override
+    public void complete(String key, MessageResponse response, Duration ttl) {
+        entries.computeIfPresent(key, (k, existing) -> new Entry(
+                new IdempotencyRecord(existing.record.fingerprint(), response),
+                System.nanoTime() + ttl.toNanos()));
+    }
+
+    @Override
+    public void release(String key) {
+        entries.remove(key);
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void purgeExpired() {
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> entry.isExpired(now));
+    }
+
+    private record Entry(IdempotencyRecord record, long expiresAt) {
+        boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+    }
+}
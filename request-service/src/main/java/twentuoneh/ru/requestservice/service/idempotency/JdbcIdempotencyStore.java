@@ -0,0 +1,89 @@
+package twentuoneh.ru.requestservice.service.idempotency;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import twentuoneh.ru.requestservice.dto.MessageResponse;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Postgres-backed store: keys survive restarts and are shared between instances.
+ */
+@Slf4j
+public class JdbcIdempotencyStore implements IdempotencyStore {
+
+    private static final RowMapper<IdempotencyRecord> RECORD_MAPPER = (rs, rowNum) -> {
+        String response = rs.getString("response");
+        return new IdempotencyRecord(
+                rs.getString("fingerprint"),
+                response != null ? new MessageResponse(response, rs.getObject("sessionId", Long.class)) : null);
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcIdempotencyStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public Optional<IdempotencyRecord> reserve(String key, String fingerprint, Duration lease) {
+        while (true) {
+            int inserted = jdbcTemplate.update("""
+                    insert into "IdempotencyKey"(key, fingerprint, "expiresAt")
+                    values (?, ?, now() + make_interval(secs => ?))
+                    on conflict (key) do update
+                        set fingerprint = excluded.fingerprint, response = null, "sessionId" = null,
+                            "createdAt" = now(), "expiresAt" = excluded."expiresAt"
+                        where "IdempotencyKey"."expiresAt" < now()
+                    """, key, fingerprint, lease.toSeconds());
+            if (inserted == 1) {
+                return Optional.empty();
+            }
+            // the conflicting row may have been released or expired in between: then the insert is retried
+            Optional<IdempotencyRecord> existing = find(key);
+            if (existing.isPresent()) {
+                return existing;
+            }
+        }
+    }
+
+    @Override
+    public Optional<IdempotencyRecord> find(String key) {
+        return jdbcTemplate.query("""
+                select fingerprint, response, "sessionId" from "IdempotencyKey"
+                where key = ? and "expiresAt" >= now()
+                """, RECORD_MAPPER, key).stream().findFirst();
+    }
+
+    @Override
+    public void renew(Collection<String> keys, Duration lease) {
+        jdbcTemplate.batchUpdate("""
+                update "IdempotencyKey" set "expiresAt" = now() + make_interval(secs => ?)
+                where key = ? and response is null
+                """, keys.stream().map(key -> new Object[]{lease.toSeconds(), key}).toList());
+    }
+
+    @Override
+    public void complete(String key, MessageResponse response, Duration ttl) {
+        jdbcTemplate.update("""
+                update "IdempotencyKey"
+                set response = ?, "sessionId" = ?, "expiresAt" = now() + make_interval(secs => ?)
+                where key = ?
+                """, response.getResponse(), response.getSessionId(), ttl.toSeconds(), key);
+    }
+
+    @Override
+    public void release(String key) {
+        jdbcTemplate.update("delete from \"IdempotencyKey\" where key = ? and response is null", key);
+    }
+
+    @Scheduled(fixedDelay = 600_000)
+    public void purgeExpired() {
+        int deleted = jdbcTemplate.update("delete from \"IdempotencyKey\" where \"expiresAt\" < now()");
+        log.info("Purged {} expired idempotency keys", deleted);
+    }
+}
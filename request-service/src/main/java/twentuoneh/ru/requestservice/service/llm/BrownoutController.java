@@ -0,0 +1,116 @@
+package twentuoneh.ru.requestservice.service.llm;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import twentuoneh.ru.requestservice.enums.Assistant;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Degrades generations step by step while the LLM is overloaded (deep queue or slow p95)
+ * and restores them one step at a time once the load stays low, instead of failing requests.
+ */
+@Slf4j
+@Component
+public class BrownoutController {
+
+    private static final double LATENCY_PERCENTILE = 0.95;
+
+    private final BrownoutProperties properties;
+    private final LlmScheduler scheduler;
+    private final int maxLevel;
+    private volatile int level;
+    private int pressureStreak;
+    private int calmStreak;
+
+    public BrownoutController(BrownoutProperties properties, LlmScheduler scheduler, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.scheduler = scheduler;
+        this.maxLevel = properties.getAssistantSteps().values().stream()
+                .mapToInt(List::size)
+                .reduce(properties.getSteps().size(), Math::max);
+        Gauge.builder("llm.brownout.level", this, BrownoutController::getLevel)
+                .description("Current generation degradation level, 0 is normal")
+                .register(meterRegistry);
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public GenerationSettings apply(Assistant assistant, GenerationSettings normal) {
+        int current = level;
+        if (current == 0) {
+            return normal;
+        }
+        List<BrownoutProperties.Step> steps = stepsOf(assistant);
+        if (steps.isEmpty()) {
+            return normal;
+        }
+        BrownoutProperties.Step step = steps.get(Math.min(current, steps.size()) - 1);
+        return new GenerationSettings(
+                step.getModel() != null && !step.getModel().isBlank() ? step.getModel() : normal.model(),
+                step.getMaxTokens() != null ? Math.min(step.getMaxTokens(), normal.maxTokens()) : normal.maxTokens(),
+                step.getHistoryDepth() != null ? Math.min(step.getHistoryDepth(), normal.historyDepth()) : normal.historyDepth());
+    }
+
+    /**
+     * Every model a generation may be sent to, so fallback models can be warmed up before they are needed.
+     */
+    public Set<String> models(String normalModel) {
+        Set<String> models = new LinkedHashSet<>();
+        models.add(normalModel);
+        properties.getSteps().forEach(step -> addModel(models, step));
+        properties.getAssistantSteps().values().forEach(steps -> steps.forEach(step -> addModel(models, step)));
+        return models;
+    }
+
+    @Scheduled(fixedDelayString = "${app.llm.brownout.evaluation-interval-ms:5000}")
+    public synchronized void evaluate() {
+        if (!properties.isEnabled() || maxLevel == 0) {
+            return;
+        }
+        int queueDepth = scheduler.getQueueDepth();
+        double latencyMillis = scheduler.latencyPercentileMillis(LATENCY_PERCENTILE);
+
+        boolean pressure = queueDepth > properties.getHighQueueDepth()
+                || latencyMillis > properties.getHighLatency().toMillis();
+        boolean calm = queueDepth <= properties.getLowQueueDepth()
+                && latencyMillis <= properties.getLowLatency().toMillis();
+
+        if (pressure) {
+            calmStreak = 0;
+            if (++pressureStreak >= properties.getEscalateAfter() && level < maxLevel) {
+                pressureStreak = 0;
+                level++;
+                log.warn("LLM brownout level raised to {} (queue {}, p95 {} ms)", level, queueDepth, Math.round(latencyMillis));
+            }
+        } else if (calm) {
+            pressureStreak = 0;
+            if (++calmStreak >= properties.getRecoverAfter() && level > 0) {
+                calmStreak = 0;
+                level--;
+                log.info("LLM brownout level lowered to {} (queue {}, p95 {} ms)", level, queueDepth, Math.round(latencyMillis));
+            }
+        } else {
+            pressureStreak = 0;
+            calmStreak = 0;
+        }
+    }
+
+    private List<BrownoutProperties.Step> stepsOf(Assistant assistant) {
+        List<BrownoutProperties.Step> steps = assistant != null ? properties.getAssistantSteps().get(assistant) : null;
+        return steps != null ? steps : properties.getSteps();
+    }
+
+    private static void addModel(Set<String> models, BrownoutProperties.Step step) {
+        if (step.getModel() != null && !step.getModel().isBlank()) {
+            models.add(step.getModel());
+        }
+    }
+}
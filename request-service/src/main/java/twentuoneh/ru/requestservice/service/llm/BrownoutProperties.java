@@ -0,0 +1,45 @@
+package twentuoneh.ru.requestservice.service.llm;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import twentuoneh.ru.requestservice.enums.Assistant;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "app.llm.brownout")
+public class BrownoutProperties {
+
+    private boolean enabled = true;
+
+    /** Pressure: queue deeper than this or p95 latency above high-latency. */
+    private int highQueueDepth = 20;
+    private Duration highLatency = Duration.ofSeconds(30);
+
+    /** Calm: queue at most this deep and p95 latency at most low-latency. */
+    private int lowQueueDepth = 5;
+    private Duration lowLatency = Duration.ofSeconds(10);
+
+    /** Consecutive evaluations under pressure before going one level down. */
+    private int escalateAfter = 2;
+
+    /** Consecutive calm evaluations before going one level back up. */
+    private int recoverAfter = 6;
+
+    /** Degradation steps, level 1 is the first entry. Unset fields keep the normal value. */
+    private List<Step> steps = new ArrayList<>();
+
+    /** Per-assistant steps replacing the common ones. */
+    private Map<Assistant, List<Step>> assistantSteps = new EnumMap<>(Assistant.class);
+
+    @Data
+    public static class Step {
+        private String model;
+        private Integer maxTokens;
+        private Integer historyDepth;
+    }
+}
@@ -0,0 +1,11 @@
+package twentuoneh.ru.requestservice.service.llm;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class GenerationCancelledException extends ResponseStatusException {
+
+    public GenerationCancelledException(Long sessionId, Throwable cause) {
+        super(HttpStatus.GONE, "Generation for session " + sessionId + " was cancelled", cause);
+    }
+}
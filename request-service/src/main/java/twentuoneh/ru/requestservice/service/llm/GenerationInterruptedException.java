@@ -0,0 +1,19 @@
+package twentuoneh.ru.requestservice.service.llm;
+
+/**
+ * Thrown by {@link LlmClient#generate} when the generating thread is interrupted;
+ * carries the text streamed before the interrupt.
+ */
+public class GenerationInterruptedException extends RuntimeException {
+
+    private final String partialContent;
+
+    public GenerationInterruptedException(String partialContent, Throwable cause) {
+        super("Generation was interrupted after " + partialContent.length() + " characters", cause);
+        this.partialContent = partialContent;
+    }
+
+    public String getPartialContent() {
+        return partialContent;
+    }
+}
@@ -0,0 +1,7 @@
+package twentuoneh.ru.requestservice.service.llm;
+
+/**
+ * What a single generation is allowed to cost: model, reply length and how many history messages are sent.
+ */
+public record GenerationSettings(String model, int maxTokens, int historyDepth) {
+}
@@ -0,0 +1,95 @@
+package twentuoneh.ru.requestservice.service.llm;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Routes every chat session to the same LocalAI backend (rendezvous hashing on sessionId),
+ * so llama.cpp can reuse the KV cache of the session prompt prefix between turns.
+ * A backend that fails to connect is skipped for a cooldown period and its sessions move to the next best backend.
+ */
+@Slf4j
+public class LlmBackendRouter {
+
+    private static final Duration DOWN_COOLDOWN = Duration.ofSeconds(30);
+
+    private final List<Backend> backends;
+
+    public LlmBackendRouter(List<Backend> backends) {
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("At least one LLM backend must be configured");
+        }
+        this.backends = List.copyOf(backends);
+    }
+
+    public List<Backend> getBackends() {
+        return backends;
+    }
+
+    public Backend route(Long sessionId) {
+        if (backends.size() == 1) {
+            return backends.get(0);
+        }
+        long key = sessionId != null ? sessionId : ThreadLocalRandom.current().nextLong();
+        long now = System.nanoTime();
+
+        Backend best = null;
+        Backend bestAny = null;
+        long bestScore = Long.MIN_VALUE;
+        long bestAnyScore = Long.MIN_VALUE;
+        for (Backend backend : backends) {
+            long score = mix(key ^ backend.hash);
+            if (score > bestAnyScore) {
+                bestAnyScore = score;
+                bestAny = backend;
+            }
+            if (backend.isUp(now) && score > bestScore) {
+                bestScore = score;
+                best = backend;
+            }
+        }
+        return best != null ? best : bestAny;
+    }
+
+    public void markDown(Backend backend) {
+        backend.downUntil = System.nanoTime() + DOWN_COOLDOWN.toNanos();
+        log.warn("LLM backend {} marked down for {} s", backend.getBaseUrl(), DOWN_COOLDOWN.toSeconds());
+    }
+
+    // SplitMix64 finalizer: spreads sequential session ids evenly over backends
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    public static class Backend {
+        private final String baseUrl;
+        private final WebClient webClient;
+        private final long hash;
+        private volatile long downUntil;
+
+        public Backend(String baseUrl, WebClient webClient) {
+            this.baseUrl = baseUrl;
+            this.webClient = webClient;
+            this.hash = mix(baseUrl.hashCode());
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        public WebClient getWebClient() {
+            return webClient;
+        }
+
+        boolean isUp(long now) {
+            long until = downUntil;
+            return until == 0 || until - now <= 0;
+        }
+    }
+}
@@ -7,5 +7,8 @@ import twentuoneh.ru.requestservice.enums.Assistant;
 import java.util.List;
 
 public interface LlmClient {
-    String generate(String assistant, List<ChatMessage> history, MessageRequest userMessage);
+    LlmCompletion generate(Long sessionId, Assistant assistant, List<ChatMessage> history, MessageRequest userMessage);
+
+    /** One minimal generation per backend and model: opens connections and makes the backend load the model. */
+    void warmUp();
 }
@@ -0,0 +1,12 @@
+package twentuoneh.ru.requestservice.service.llm;
+
+/**
+ * @param promptTokens     prompt tokens as reported by the backend, 0 if unknown
+ * @param completionTokens generated tokens as reported by the backend, 0 if unknown
+ */
+public record LlmCompletion(String content, long promptTokens, long completionTokens) {
+
+    public boolean hasUsage() {
+        return promptTokens > 0 || completionTokens > 0;
+    }
+}
@@ -0,0 +1,180 @@
+package twentuoneh.ru.requestservice.service.llm;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import twentuoneh.ru.requestservice.enums.Assistant;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Limits concurrent generations and hands free slots out by start-time fair queuing:
+ * every user is a flow, each generation costs 1 / weight of its assistant type,
+ * so a user firing requests in a loop only delays their own requests.
+ * Waiting generations are served in start tag order; virtual time is the start tag of the
+ * latest generation put into service and never goes back.
+ */
+@Slf4j
+@Component
+public class LlmScheduler {
+
+    private static final Long ANONYMOUS = -1L;
+    private static final int FLOW_PURGE_THRESHOLD = 10_000;
+
+    private final LlmSchedulerProperties properties;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Ticket> queue = new PriorityQueue<>(
+            Comparator.comparingDouble((Ticket ticket) -> ticket.startTag).thenComparingLong(ticket -> ticket.seq));
+    private final Map<Long, Double> lastFinishTags = new HashMap<>();
+    private final Timer queueWait;
+    private final Timer generationLatency;
+    private double virtualTime;
+    private double maxFinishTag;
+    private long seq;
+    private volatile int running;
+    private volatile int queueDepth;
+
+    public LlmScheduler(LlmSchedulerProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.queueWait = Timer.builder("llm.queue.wait")
+                .description("Time a generation waited for a free LLM slot")
+                .register(meterRegistry);
+        this.generationLatency = Timer.builder("llm.generation.latency")
+                .description("Time a generation held an LLM slot")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .distributionStatisticExpiry(Duration.ofMinutes(1))
+                .register(meterRegistry);
+        Gauge.builder("llm.queue.depth", this, LlmScheduler::getQueueDepth)
+                .description("Generations waiting for a free LLM slot")
+                .register(meterRegistry);
+        Gauge.builder("llm.active", this, scheduler -> scheduler.running)
+                .description("Generations running against the LLM backend")
+                .register(meterRegistry);
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Generation latency at the given published percentile (0.5, 0.95, 0.99) over the last minute, 0 if unknown.
+     */
+    public double latencyPercentileMillis(double percentile) {
+        for (ValueAtPercentile value : generationLatency.takeSnapshot().percentileValues()) {
+            if (value.percentile() == percentile) {
+                return value.value(TimeUnit.MILLISECONDS);
+            }
+        }
+        return 0;
+    }
+
+    public <T> T execute(Long userId, Assistant assistant, Supplier<T> work) {
+        long start = System.nanoTime();
+        acquire(userId != null ? userId : ANONYMOUS, properties.weightOf(assistant));
+        long acquired = System.nanoTime();
+        queueWait.record(acquired - start, TimeUnit.NANOSECONDS);
+        try {
+            return work.get();
+        } finally {
+            generationLatency.record(System.nanoTime() - acquired, TimeUnit.NANOSECONDS);
+            release();
+        }
+    }
+
+    private void acquire(Long flow, double weight) {
+        lock.lock();
+        try {
+            double startTag = Math.max(virtualTime, lastFinishTags.getOrDefault(flow, 0d));
+            double finishTag = startTag + 1 / weight;
+
+            if (running < properties.getMaxConcurrency() && queue.isEmpty()) {
+                lastFinishTags.put(flow, finishTag);
+                maxFinishTag = Math.max(maxFinishTag, finishTag);
+                virtualTime = startTag;
+                running++;
+                return;
+            }
+            if (queue.size() >= properties.getMaxQueue()) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "LLM queue is full");
+            }
+
+            lastFinishTags.put(flow, finishTag);
+            maxFinishTag = Math.max(maxFinishTag, finishTag);
+            Ticket ticket = new Ticket(startTag, seq++, lock.newCondition());
+            queue.add(ticket);
+            queueDepth = queue.size();
+            try {
+                while (!ticket.granted) {
+                    ticket.condition.await();
+                }
+            } catch (InterruptedException ex) {
+                if (ticket.granted) {
+                    running--;
+                    dispatch();
+                } else {
+                    queue.remove(ticket);
+                    queueDepth = queue.size();
+                }
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a free LLM slot", ex);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            running--;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatch() {
+        while (running < properties.getMaxConcurrency() && !queue.isEmpty()) {
+            Ticket next = queue.poll();
+            virtualTime = Math.max(virtualTime, next.startTag);
+            next.granted = true;
+            running++;
+            next.condition.signal();
+        }
+        queueDepth = queue.size();
+        if (running == 0) {
+            // idle: all earlier work is done, so nobody keeps credit or debt from it
+            virtualTime = maxFinishTag;
+        }
+        if (lastFinishTags.size() > FLOW_PURGE_THRESHOLD) {
+            // flows that finished before the current virtual time have no advantage left to remember
+            lastFinishTags.values().removeIf(finishTag -> finishTag <= virtualTime);
+        }
+    }
+
+    private static final class Ticket {
+        private final double startTag;
+        private final long seq;
+        private final Condition condition;
+        private boolean granted;
+
+        private Ticket(double startTag, long seq, Condition condition) {
+            this.startTag = startTag;
+            this.seq = seq;
+            this.condition = condition;
+        }
+    }
+}
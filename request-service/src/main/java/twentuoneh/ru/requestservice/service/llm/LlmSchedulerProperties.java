@@ -0,0 +1,27 @@
+package twentuoneh.ru.requestservice.service.llm;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import twentuoneh.ru.requestservice.enums.Assistant;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "app.llm.scheduling")
+public class LlmSchedulerProperties {
+
+    /** Generations running against LocalAI at the same time, the rest wait in the fair queue. */
+    private int maxConcurrency = 4;
+
+    /** Waiting generations above this are rejected with 503. */
+    private int maxQueue = 200;
+
+    /** Share of capacity per assistant type relative to the others (default 1). */
+    private Map<Assistant, Double> assistantWeights = new EnumMap<>(Assistant.class);
+
+    public double weightOf(Assistant assistant) {
+        Double weight = assistant != null ? assistantWeights.get(assistant) : null;
+        return weight != null && weight > 0 ? weight : 1.0;
+    }
+}
@@ -1,17 +1,30 @@
 package twentuoneh.ru.requestservice.service.llm;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 import reactor.core.publisher.Mono;
 import twentuoneh.ru.requestservice.dto.ChatMessage;
 import twentuoneh.ru.requestservice.dto.MessageRequest;
 import twentuoneh.ru.requestservice.enums.Assistant;
+import twentuoneh.ru.requestservice.enums.ChatRole;
 
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @Service
@@ -19,76 +32,242 @@ public class LocalLlmClient implements LlmClient {
 
     private static final String MODEL = "llama-3.2-1b-instruct:q4_k_m";
     private static final int MAX_MESSAGES = 20;
+    // history is trimmed in whole steps, so the prompt prefix stays the same for several turns in a row
+    private static final int HISTORY_TRIM_STEP = 10;
     private static final int MAX_TOKENS = 512;
+    private static final GenerationSettings NORMAL = new GenerationSettings(MODEL, MAX_TOKENS, MAX_MESSAGES);
+    private static final String STREAM_DONE = "[DONE]";
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SERVER_SENT_EVENTS =
+            new ParameterizedTypeReference<>() { };
 
-    private final WebClient webClient;
+    private final LlmBackendRouter router;
+    private final BrownoutController brownout;
+    private final int slots;
+    private final Duration warmupTimeout;
+    private final DistributionSummary promptTokens;
+    private final DistributionSummary cachedPromptTokens;
+    private final Timer prefillTimer;
+    private final ObjectMapper objectMapper;
 
-    public LocalLlmClient(WebClient webClient) {
-        this.webClient = webClient;
+    public LocalLlmClient(LlmBackendRouter router,
+                          BrownoutController brownout,
+                          MeterRegistry meterRegistry,
+                          ObjectMapper objectMapper,
+                          @Value("${ai.localai.slots:0}") int slots,
+                          @Value("${app.warmup.llm-timeout:120s}") Duration warmupTimeout) {
+        this.router = router;
+        this.brownout = brownout;
+        this.slots = slots;
+        this.warmupTimeout = warmupTimeout;
+        this.objectMapper = objectMapper;
+        this.promptTokens = DistributionSummary.builder("llm.prompt.tokens")
+                .description("Prompt tokens sent per generation")
+                .register(meterRegistry);
+        this.cachedPromptTokens = DistributionSummary.builder("llm.prompt.cached.tokens")
+                .description("Prompt tokens reused from the backend KV cache per generation")
+                .register(meterRegistry);
+        this.prefillTimer = Timer.builder("llm.prompt.prefill")
+                .description("Prompt prefill time reported by the backend")
+                .register(meterRegistry);
     }
 
     @Override
-    public String generate(String assistant, List<ChatMessage> history, MessageRequest userMessage) {
+    public LlmCompletion generate(Long sessionId, Assistant assistant, List<ChatMessage> history, MessageRequest userMessage) {
         long startTime = System.currentTimeMillis();
-        log.info("Starting LLM generation for assistant: {}, history size: {}", assistant, history.size());
-        
-        List<ChatMessage> limitedHistory = history.size() > MAX_MESSAGES 
-                ? history.subList(history.size() - MAX_MESSAGES, history.size())
-                : history;
-        
-        Map<String, Object> body = new HashMap<>();
-        body.put("model", MODEL);
-        body.put("messages", convertToMessages(assistant, limitedHistory, userMessage.getMessage()));
-        body.put("instruction", userMessage.getAssistant().systemPrompt());
-        body.put("stream", false);
+        GenerationSettings settings = brownout.apply(assistant, NORMAL);
+        log.info("Starting LLM generation for assistant: {}, history size: {}, settings: {}", assistant, history.size(), settings);
+
+        List<ChatMessage> limitedHistory = trimHistory(history, settings.historyDepth());
+        LlmBackendRouter.Backend backend = router.route(sessionId);
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", settings.model());
+        body.put("messages", convertToMessages(assistant.systemPrompt(), limitedHistory, userMessage.getMessage()));
+        body.put("stream", true);
+        body.put("stream_options", Map.of("include_usage", true));
         body.put("temperature", 0.7);
-        body.put("max_tokens", MAX_TOKENS);
-
-        String result = webClient.post()
-                .uri("/v1/chat/completions")
-                .bodyValue(body)
-                .retrieve()
-                .bodyToMono(Map.class)
-                .map(LocalLlmClient::extractContent)
-                .onErrorResume(e -> {
-                    log.error("LLM request failed: {}", e.getMessage(), e);
-                    return Mono.just("LLM error: " + e.getMessage());
-                })
-                .block();
-        
+        body.put("max_tokens", settings.maxTokens());
+        body.put("cache_prompt", true);
+        if (slots > 0 && sessionId != null) {
+            body.put("id_slot", Math.floorMod(sessionId, slots));
+        }
+
+        // streamed, so that a cancelled turn keeps the text generated up to the cancel
+        StringBuffer content = new StringBuffer();
+        AtomicReference<Map<?, ?>> usageChunk = new AtomicReference<>();
+        LlmCompletion result;
+        try {
+            result = backend.getWebClient().post()
+                    .uri("/v1/chat/completions")
+                    .accept(MediaType.TEXT_EVENT_STREAM)
+                    .bodyValue(body)
+                    .retrieve()
+                    .bodyToFlux(SERVER_SENT_EVENTS)
+                    .mapNotNull(ServerSentEvent::data)
+                    .takeWhile(data -> !STREAM_DONE.equals(data))
+                    .map(this::parseChunk)
+                    .doOnNext(chunk -> {
+                        appendDelta(content, chunk);
+                        if (chunk.get("usage") != null) {
+                            usageChunk.set(chunk);
+                        }
+                    })
+                    .then(Mono.fromCallable(() -> completion(content, usageChunk.get())))
+                    .onErrorResume(e -> {
+                        if (e instanceof WebClientRequestException) {
+                            router.markDown(backend);
+                        }
+                        log.error("LLM request failed: {}", e.getMessage(), e);
+                        return Mono.just(new LlmCompletion("LLM error: " + e.getMessage(), 0, 0));
+                    })
+                    .block();
+        } catch (RuntimeException ex) {
+            // block() disposes the exchange when interrupted, which closes the upstream connection
+            if (Thread.currentThread().isInterrupted() || ex.getCause() instanceof InterruptedException) {
+                throw new GenerationInterruptedException(content.toString(), ex);
+            }
+            throw ex;
+        }
+
         long duration = System.currentTimeMillis() - startTime;
-        log.info("LLM generation completed in {} ms", duration);
-        
+        log.info("LLM generation completed in {} ms on {}", duration, backend.getBaseUrl());
+
         return result;
     }
 
-    private List<Map<String, String>> convertToMessages(String assistant, List<ChatMessage> history, String userMessage) {
+    @Override
+    public void warmUp() {
+        for (String model : brownout.models(MODEL)) {
+            for (LlmBackendRouter.Backend backend : router.getBackends()) {
+                warmUp(backend, model);
+            }
+        }
+    }
+
+    private void warmUp(LlmBackendRouter.Backend backend, String model) {
+        long startTime = System.currentTimeMillis();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", model);
+        body.put("messages", List.of(message(ChatRole.USER.apiName(), "ping")));
+        body.put("stream", false);
+        body.put("max_tokens", 1);
+        try {
+            backend.getWebClient().post()
+                    .uri("/v1/chat/completions")
+                    .bodyValue(body)
+                    .retrieve()
+                    .toBodilessEntity()
+                    .block(warmupTimeout);
+            log.info("LLM backend {} warmed up with model {} in {} ms",
+                    backend.getBaseUrl(), model, System.currentTimeMillis() - startTime);
+        } catch (RuntimeException ex) {
+            log.warn("LLM backend {} warm-up with model {} failed: {}", backend.getBaseUrl(), model, ex.getMessage());
+        }
+    }
+
+    // keeps between maxMessages - step + 1 and maxMessages messages; the step is at most half the depth,
+    // so a small brownout depth never drops (almost) the whole history
+    static List<ChatMessage> trimHistory(List<ChatMessage> history, int maxMessages) {
+        int overflow = history.size() - maxMessages;
+        if (overflow <= 0) {
+            return history;
+        }
+        if (maxMessages <= 0) {
+            return List.of();
+        }
+        int step = Math.min(HISTORY_TRIM_STEP, Math.max(1, maxMessages / 2));
+        int drop = (overflow + step - 1) / step * step;
+        return history.subList(drop, history.size());
+    }
+
+    private List<Map<String, String>> convertToMessages(String systemPrompt, List<ChatMessage> history, String userMessage) {
         List<Map<String, String>> messages = new ArrayList<>();
 
+        // system prompt first, then append-only history: the prompt of the previous turn is a prefix of this one
+        if (!systemPrompt.isBlank()) {
+            messages.add(message(ChatRole.SYSTEM.apiName(), systemPrompt));
+        }
         for (ChatMessage chatMessage : history) {
-            messages.add(Map.of(
-                    "role", chatMessage.role(),
-                    "content", chatMessage.content()
-            ));
+            messages.add(message(chatMessage.role(), chatMessage.content()));
         }
 
-        messages.add(Map.of("role", assistant, "content", userMessage));
+        messages.add(message(ChatRole.USER.apiName(), userMessage));
 
         return messages;
     }
 
+    private static Map<String, String> message(String role, String content) {
+        Map<String, String> message = new LinkedHashMap<>();
+        message.put("role", role);
+        message.put("content", content);
+        return message;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void recordPrefill(Map<?, ?> response) {
+        try {
+            var usage = (Map<String, Object>) response.get("usage");
+            var timings = (Map<String, Object>) response.get("timings");
+            if (usage == null || timings == null) return;
+            var prompt = (Number) usage.get("prompt_tokens");
+            var evaluated = (Number) timings.get("prompt_n");
+            if (prompt == null || evaluated == null) return;
+
+            long cached = Math.max(0, prompt.longValue() - evaluated.longValue());
+            promptTokens.record(prompt.doubleValue());
+            cachedPromptTokens.record(cached);
+            var prefillMs = (Number) timings.get("prompt_ms");
+            if (prefillMs != null) {
+                prefillTimer.record((long) (prefillMs.doubleValue() * 1000), TimeUnit.MICROSECONDS);
+            }
+            log.info("Prompt prefill: {} of {} prompt tokens reused from cache", cached, prompt);
+        } catch (ClassCastException ex) {
+            log.debug("Unexpected usage/timings format: {}", ex.getMessage());
+        }
+    }
+
+    private Map<?, ?> parseChunk(String data) {
+        try {
+            return objectMapper.readValue(data, Map.class);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Unparsable LLM stream chunk: " + ex.getOriginalMessage(), ex);
+        }
+    }
+
+    private LlmCompletion completion(CharSequence content, Map<?, ?> usageChunk) {
+        String text = content.isEmpty() ? "LLM: empty content" : content.toString();
+        if (usageChunk == null) {
+            return new LlmCompletion(text, 0, 0);
+        }
+        recordPrefill(usageChunk);
+        return new LlmCompletion(text,
+                extractUsage(usageChunk, "prompt_tokens"),
+                extractUsage(usageChunk, "completion_tokens"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long extractUsage(Map<?, ?> response, String field) {
+        try {
+            var usage = (Map<String, Object>) response.get("usage");
+            var tokens = usage != null ? (Number) usage.get(field) : null;
+            return tokens != null ? tokens.longValue() : 0;
+        } catch (ClassCastException ex) {
+            return 0;
+        }
+    }
+
     @SuppressWarnings("unchecked")
-    private static String extractContent(Map<?, ?> response) {
+    private static void appendDelta(StringBuffer content, Map<?, ?> chunk) {
         try {
-            var choices = (List<Map<String, Object>>) response.get("choices");
-            if (choices == null || choices.isEmpty()) return "LLM: empty choices";
-            var first = choices.get(0);
-            var message = (Map<String, Object>) first.get("message");
-            if (message == null) return "LLM: missing message";
-            var content = (String) message.get("content");
-            return content != null ? content : "LLM: empty content";
-        } catch (Exception ex) {
-            return "LLM parse error: " + ex.getMessage();
+            var choices = (List<Map<String, Object>>) chunk.get("choices");
+            if (choices == null || choices.isEmpty()) return;
+            var delta = (Map<String, Object>) choices.get(0).get("delta");
+            var text = delta != null ? (String) delta.get("content") : null;
+            if (text != null) {
+                content.append(text);
+            }
+        } catch (ClassCastException ex) {
+            log.debug("Unexpected stream chunk format: {}", ex.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,75 @@
+package twentuoneh.ru.requestservice.service.ratelimit;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket: the whole state is swapped with a single CAS, no thread ever blocks on it.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerNano;
+    private final LongSupplier clock;
+    private final AtomicReference<State> state;
+
+    public TokenBucket(double capacity, double refillPerSecond) {
+        this(capacity, refillPerSecond, System::nanoTime);
+    }
+
+    TokenBucket(double capacity, double refillPerSecond, LongSupplier clock) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1_000_000_000d;
+        this.clock = clock;
+        this.state = new AtomicReference<>(new State(capacity, clock.getAsLong()));
+    }
+
+    public boolean tryConsume(double amount) {
+        while (true) {
+            State current = state.get();
+            State refilled = refill(current);
+            if (refilled.tokens < amount) {
+                return false;
+            }
+            if (state.compareAndSet(current, new State(refilled.tokens - amount, refilled.nanos))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Takes tokens unconditionally, the bucket may go into debt (used for costs known only afterwards).
+     */
+    public void consume(double amount) {
+        while (true) {
+            State current = state.get();
+            State refilled = refill(current);
+            if (state.compareAndSet(current, new State(refilled.tokens - amount, refilled.nanos))) {
+                return;
+            }
+        }
+    }
+
+    public double available() {
+        return refill(state.get()).tokens;
+    }
+
+    public boolean isFull() {
+        return available() >= capacity;
+    }
+
+    public long nanosUntilAvailable(double amount) {
+        double missing = amount - available();
+        return missing <= 0 ? 0 : (long) Math.ceil(missing / refillPerNano);
+    }
+
+    private State refill(State current) {
+        long now = clock.getAsLong();
+        long elapsed = Math.max(0, now - current.nanos);
+        double tokens = Math.min(capacity, current.tokens + elapsed * refillPerNano);
+        return new State(tokens, current.nanos + elapsed);
+    }
+
+    private record State(double tokens, long nanos) {
+    }
+}
@@ -0,0 +1,84 @@
+package twentuoneh.ru.requestservice.service.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-user limits on requests and on generated tokens. Users without an id share one bucket.
+ */
+@Slf4j
+@Component
+public class UserRateLimiter {
+
+    private static final Long ANONYMOUS = -1L;
+
+    private final boolean enabled;
+    private final double requestBurst;
+    private final double requestsPerSecond;
+    private final double tokenBurst;
+    private final double tokensPerSecond;
+    private final ConcurrentHashMap<Long, UserBuckets> buckets = new ConcurrentHashMap<>();
+    private final Counter rejectedRequests;
+    private final Counter rejectedTokens;
+
+    public UserRateLimiter(@Value("${app.rate-limit.enabled:true}") boolean enabled,
+                           @Value("${app.rate-limit.request-burst:10}") double requestBurst,
+                           @Value("${app.rate-limit.requests-per-minute:20}") double requestsPerMinute,
+                           @Value("${app.rate-limit.token-burst:4000}") double tokenBurst,
+                           @Value("${app.rate-limit.tokens-per-minute:20000}") double tokensPerMinute,
+                           MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.requestBurst = requestBurst;
+        this.requestsPerSecond = requestsPerMinute / 60;
+        this.tokenBurst = tokenBurst;
+        this.tokensPerSecond = tokensPerMinute / 60;
+        this.rejectedRequests = Counter.builder("ratelimit.rejected").tag("limit", "requests").register(meterRegistry);
+        this.rejectedTokens = Counter.builder("ratelimit.rejected").tag("limit", "tokens").register(meterRegistry);
+    }
+
+    public void acquireRequest(Long userId) {
+        if (!enabled) return;
+        UserBuckets userBuckets = bucketsFor(userId);
+        if (userBuckets.tokens.available() <= 0) {
+            rejectedTokens.increment();
+            throw new RateLimitExceededException("Generated token limit exceeded",
+                    userBuckets.tokens.nanosUntilAvailable(1));
+        }
+        if (!userBuckets.requests.tryConsume(1)) {
+            rejectedRequests.increment();
+            throw new RateLimitExceededException("Request limit exceeded",
+                    userBuckets.requests.nanosUntilAvailable(1));
+        }
+    }
+
+    public void recordGeneratedTokens(Long userId, long tokens) {
+        if (!enabled || tokens <= 0) return;
+        bucketsFor(userId).tokens.consume(tokens);
+    }
+
+    // a user with full buckets is indistinguishable from a new one, so it can be forgotten
+    @Scheduled(fixedDelay = 60_000)
+    public void evictIdle() {
+        buckets.values().removeIf(userBuckets -> userBuckets.requests.isFull() && userBuckets.tokens.isFull());
+    }
+
+    private UserBuckets bucketsFor(Long userId) {
+        Long key = userId != null ? userId : ANONYMOUS;
+        UserBuckets existing = buckets.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        return buckets.computeIfAbsent(key, id -> new UserBuckets(
+                new TokenBucket(requestBurst, requestsPerSecond),
+                new TokenBucket(tokenBurst, tokensPerSecond)));
+    }
+
+    private record UserBuckets(TokenBucket requests, TokenBucket tokens) {
+    }
+}
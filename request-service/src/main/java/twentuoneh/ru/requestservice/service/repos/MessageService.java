@@ -5,8 +5,10 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import twentuoneh.ru.requestservice.datasource.ReadYourWritesTracker;
 import twentuoneh.ru.requestservice.entity.Message;
 import twentuoneh.ru.requestservice.repository.MessageRepository;
+import twentuoneh.ru.requestservice.repository.SessionRepository;
 
 import java.util.List;
 
@@ -16,6 +18,8 @@ import java.util.List;
 public class MessageService {
 
     private final MessageRepository messageRepository;
+    private final SessionRepository sessionRepository;
+    private final ReadYourWritesTracker readYourWritesTracker;
 
     @Transactional(readOnly = true)
     public List<Message> getAllMessages() {
@@ -48,7 +52,9 @@ public class MessageService {
 
     @Transactional
     public Message createMessage(Message message) {
+        message.setSeq(sessionRepository.nextMessageSeq(message.getSession().getId()));
         var savedMessage = messageRepository.save(message);
+        readYourWritesTracker.markWritten(ReadYourWritesTracker.SESSION, savedMessage.getSession().getId());
         log.info("Message created = {}", savedMessage.getText());
         return savedMessage;
     }
@@ -61,9 +67,10 @@ public class MessageService {
     }
 
     @Transactional(readOnly = true)
-    public List<Message> findBySessionIdOrderByTimestampAsc(Long sessionId) {
+    public List<Message> findBySessionIdOrderBySeqAsc(Long sessionId) {
         if (sessionId == null) return List.of();
-        var messages = messageRepository.findBySession_IdOrderByTimestampAsc(sessionId);
+        readYourWritesTracker.pinIfRecentlyWritten(ReadYourWritesTracker.SESSION, sessionId);
+        var messages = messageRepository.findBySession_IdOrderBySeqAsc(sessionId);
         log.info("Found {} messages for session id = {}", messages.size(), sessionId);
         return messages;
     }
@@ -5,6 +5,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import twentuoneh.ru.requestservice.datasource.ReadYourWritesTracker;
 import twentuoneh.ru.requestservice.entity.Session;
 import twentuoneh.ru.requestservice.repository.SessionRepository;
 
@@ -17,6 +18,7 @@ import java.util.Optional;
 public class SessionService {
 
     private final SessionRepository sessionRepository;
+    private final ReadYourWritesTracker readYourWritesTracker;
 
     @Transactional(readOnly = true)
     public List<Session> getAllSessions() {
@@ -27,6 +29,7 @@ public class SessionService {
 
     @Transactional(readOnly = true)
     public Optional<Session> getSessionById(Long id) {
+        readYourWritesTracker.pinIfRecentlyWritten(ReadYourWritesTracker.SESSION, id);
         var session = sessionRepository.findById(id);
         log.info("Session found = {}", session.toString());
         return session;
@@ -50,6 +53,7 @@ public class SessionService {
     @Transactional
     public Session createSession(Session session) {
         var savedSession = sessionRepository.save(session);
+        readYourWritesTracker.markWritten(ReadYourWritesTracker.SESSION, savedSession.getId());
         log.info("Session with id created = {}", savedSession.getId());
         return savedSession;
     }
@@ -5,6 +5,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import twentuoneh.ru.requestservice.datasource.ReadYourWritesTracker;
 import twentuoneh.ru.requestservice.entity.User;
 import twentuoneh.ru.requestservice.repository.UserRepository;
 
@@ -18,6 +19,7 @@ import java.util.Optional;
 public class UserService {
 
     private final UserRepository userRepository;
+    private final ReadYourWritesTracker readYourWritesTracker;
 
     @Transactional(readOnly = true)
     public List<User> getAllUsers() {
@@ -28,6 +30,7 @@ public class UserService {
 
     @Transactional(readOnly = true)
     public Optional<User> getUserById(Long id) {
+        readYourWritesTracker.pinIfRecentlyWritten(ReadYourWritesTracker.USER, id);
         Optional<User> user = userRepository.findById(id);
         log.info("User found with id = {}", id);
         return user;
@@ -44,6 +47,7 @@ public class UserService {
     @Transactional
     public User createUser(User user) {
         var savedUser = userRepository.save(user);
+        readYourWritesTracker.markWritten(ReadYourWritesTracker.USER, savedUser.getId());
         log.info("User created = {}", savedUser);
         return savedUser;
     }
@@ -55,6 +59,7 @@ public class UserService {
         user.setEmail(userDetails.getEmail());
         user.setUpdatedAt(LocalDateTime.now());
         var updatedUser = userRepository.save(user);
+        readYourWritesTracker.markWritten(ReadYourWritesTracker.USER, updatedUser.getId());
         log.info("User updated = {}", updatedUser);
         return updatedUser;
     }
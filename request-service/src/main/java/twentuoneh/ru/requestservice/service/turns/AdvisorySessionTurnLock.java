@@ -0,0 +1,87 @@
+package twentuoneh.ru.requestservice.service.turns;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Supplier;
+
+/**
+ * Multi-node ordering with a Postgres session-level advisory lock keyed by sessionId.
+ * The lock is held on a connection of its own pool for the whole turn, so turns waiting for the LLM
+ * never take connections away from the short transactions of the main pool.
+ * Turns of the same session on this node queue on the local lock first, so a session holds at most one lock connection.
+ */
+@Slf4j
+public class AdvisorySessionTurnLock implements SessionTurnLock, AutoCloseable {
+
+    private static final long MIN_BACKOFF_MILLIS = 10;
+    private static final long MAX_BACKOFF_MILLIS = 200;
+
+    private final HikariDataSource lockPool;
+    private final LocalSessionTurnLock localLock = new LocalSessionTurnLock();
+
+    public AdvisorySessionTurnLock(HikariDataSource lockPool) {
+        this.lockPool = lockPool;
+    }
+
+    @Override
+    public void close() {
+        lockPool.close();
+    }
+
+    @Override
+    public <T> T withLock(Long sessionId, Supplier<T> turn) {
+        return localLock.withLock(sessionId, () -> {
+            try (Connection connection = lockPool.getConnection()) {
+                acquire(connection, sessionId);
+                try {
+                    return turn.get();
+                } finally {
+                    release(connection, sessionId);
+                }
+            } catch (SQLException ex) {
+                throw new IllegalStateException("Advisory lock for session " + sessionId + " failed", ex);
+            }
+        });
+    }
+
+    // pg_try_advisory_lock in a loop instead of pg_advisory_lock: waiting stays interruptible
+    private void acquire(Connection connection, Long sessionId) throws SQLException {
+        long backoff = MIN_BACKOFF_MILLIS;
+        try (PreparedStatement statement = connection.prepareStatement("select pg_try_advisory_lock(?)")) {
+            statement.setLong(1, sessionId);
+            while (true) {
+                try (ResultSet rs = statement.executeQuery()) {
+                    rs.next();
+                    if (rs.getBoolean(1)) return;
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for session " + sessionId, ex);
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    private void release(Connection connection, Long sessionId) {
+        try (PreparedStatement statement = connection.prepareStatement("select pg_advisory_unlock(?)")) {
+            statement.setLong(1, sessionId);
+            statement.executeQuery().close();
+        } catch (SQLException ex) {
+            // a pooled connection would keep the lock: evict it, the lock goes away with the backend session
+            log.warn("Advisory unlock for session {} failed: {}", sessionId, ex.getMessage());
+            try {
+                connection.abort(Runnable::run);
+            } catch (SQLException abortEx) {
+                log.warn("Could not abort connection: {}", abortEx.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package twentuoneh.ru.requestservice.service.turns;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Single-node ordering: one fair lock per session, alive only while turns of that session run or wait.
+ * Sessions never share a lock, so a generation only ever delays later turns of its own session.
+ */
+public class LocalSessionTurnLock implements SessionTurnLock {
+
+    private final ConcurrentHashMap<Long, SessionLock> locks = new ConcurrentHashMap<>();
+
+    @Override
+    public <T> T withLock(Long sessionId, Supplier<T> turn) {
+        // users is only changed inside compute/computeIfPresent, which are atomic per key
+        SessionLock sessionLock = locks.compute(sessionId, (id, existing) -> {
+            SessionLock lock = existing != null ? existing : new SessionLock();
+            lock.users++;
+            return lock;
+        });
+        try {
+            try {
+                sessionLock.lock.lockInterruptibly();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for session " + sessionId, ex);
+            }
+            try {
+                return turn.get();
+            } finally {
+                sessionLock.lock.unlock();
+            }
+        } finally {
+            locks.computeIfPresent(sessionId, (id, lock) -> --lock.users == 0 ? null : lock);
+        }
+    }
+
+    int activeSessions() {
+        return locks.size();
+    }
+
+    private static final class SessionLock {
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private int users;
+    }
+}
@@ -0,0 +1,11 @@
+package twentuoneh.ru.requestservice.service.turns;
+
+import java.util.function.Supplier;
+
+/**
+ * Serializes the turns of one chat session. Turns of different sessions never wait for each other.
+ */
+public interface SessionTurnLock {
+
+    <T> T withLock(Long sessionId, Supplier<T> turn);
+}
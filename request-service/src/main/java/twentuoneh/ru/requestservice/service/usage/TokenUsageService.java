@@ -0,0 +1,181 @@
+package twentuoneh.ru.requestservice.service.usage;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import twentuoneh.ru.requestservice.dto.DailyTokenUsage;
+import twentuoneh.ru.requestservice.dto.TokenUsage;
+import twentuoneh.ru.requestservice.dto.TokenUsageSummary;
+import twentuoneh.ru.requestservice.enums.Assistant;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts prompt and completion tokens per user and per assistant. Recording is a few LongAdder increments,
+ * so it stays off the contended path; totals are read only by metrics, the usage API and the rate sampler.
+ */
+@Slf4j
+@Service
+public class TokenUsageService {
+
+    private static final Long ANONYMOUS = -1L;
+
+    private static final RowMapper<DailyTokenUsage> DAILY_MAPPER = (rs, rowNum) -> new DailyTokenUsage(
+            rs.getObject("day", LocalDate.class),
+            Assistant.fromCode(rs.getShort("assistant")),
+            rs.getLong("generations"),
+            rs.getLong("promptTokens"),
+            rs.getLong("completionTokens"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration userIdle;
+    private final Instant since = Instant.now();
+    private final Counters total = new Counters();
+    private final Map<Assistant, Counters> byAssistant = new EnumMap<>(Assistant.class);
+    private final ConcurrentHashMap<Long, Counters> byUser = new ConcurrentHashMap<>();
+    private long lastSampleNanos = System.nanoTime();
+    private long lastPromptTokens;
+    private long lastCompletionTokens;
+    private volatile double promptTokensPerSecond;
+    private volatile double completionTokensPerSecond;
+
+    public TokenUsageService(JdbcTemplate jdbcTemplate,
+                             @Value("${app.usage.user-idle:24h}") Duration userIdle,
+                             MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userIdle = userIdle;
+        for (Assistant assistant : Assistant.values()) {
+            Counters counters = new Counters();
+            byAssistant.put(assistant, counters);
+            FunctionCounter.builder("llm.tokens", counters, c -> c.promptTokens.sum())
+                    .description("Tokens processed by the LLM backend")
+                    .tag("type", "prompt")
+                    .tag("assistant", assistant.name())
+                    .register(meterRegistry);
+            FunctionCounter.builder("llm.tokens", counters, c -> c.completionTokens.sum())
+                    .description("Tokens processed by the LLM backend")
+                    .tag("type", "completion")
+                    .tag("assistant", assistant.name())
+                    .register(meterRegistry);
+        }
+        Gauge.builder("llm.tokens.rate", this, service -> service.promptTokensPerSecond)
+                .description("Tokens per second over the last sampling interval")
+                .tag("type", "prompt")
+                .register(meterRegistry);
+        Gauge.builder("llm.tokens.rate", this, service -> service.completionTokensPerSecond)
+                .description("Tokens per second over the last sampling interval")
+                .tag("type", "completion")
+                .register(meterRegistry);
+        Gauge.builder("llm.tokens.prompt.ratio", total, c -> c.snapshot().promptToCompletionRatio())
+                .description("Prompt tokens per generated token since start")
+                .register(meterRegistry);
+    }
+
+    public void record(Long userId, Assistant assistant, long promptTokens, long completionTokens) {
+        total.add(promptTokens, completionTokens);
+        byAssistant.get(assistant != null ? assistant : Assistant.DEFAULT).add(promptTokens, completionTokens);
+        // inside compute, so that evictIdleUsers cannot drop the entry between lookup and increment
+        long now = System.nanoTime();
+        byUser.compute(userId != null ? userId : ANONYMOUS, (id, counters) -> {
+            Counters user = counters != null ? counters : new Counters();
+            user.add(promptTokens, completionTokens);
+            user.lastUsedNanos = now;
+            return user;
+        });
+    }
+
+    public TokenUsageSummary summary() {
+        Map<Assistant, TokenUsage> assistants = new EnumMap<>(Assistant.class);
+        byAssistant.forEach((assistant, counters) -> assistants.put(assistant, counters.snapshot()));
+        return new TokenUsageSummary(since, promptTokensPerSecond, completionTokensPerSecond,
+                total.snapshot(), assistants);
+    }
+
+    public Optional<TokenUsage> userUsage(Long userId) {
+        return Optional.ofNullable(byUser.get(userId)).map(Counters::snapshot);
+    }
+
+    /**
+     * Daily rollup from stored assistant messages, so it covers all instances and survives restarts.
+     */
+    @Transactional(readOnly = true)
+    public List<DailyTokenUsage> daily(Instant from, Instant to, Assistant assistant) {
+        List<Object> args = new ArrayList<>(List.of(Timestamp.from(from), Timestamp.from(to)));
+        String assistantFilter = "";
+        if (assistant != null) {
+            assistantFilter = "and s.assistant = ?";
+            args.add(assistant.code());
+        }
+        return jdbcTemplate.query("""
+                select (m.timestamp at time zone 'UTC')::date as day, s.assistant,
+                       count(*) as generations,
+                       coalesce(sum(m."promptTokens"), 0) as "promptTokens",
+                       coalesce(sum(m."completionTokens"), 0) as "completionTokens"
+                from "Message" m
+                join "Session" s on s.id = m."sessionId"
+                where m."completionTokens" is not null
+                  and m.timestamp >= ? and m.timestamp < ?
+                  %s
+                group by 1, 2
+                order by 1, 2
+                """.formatted(assistantFilter), DAILY_MAPPER, args.toArray());
+    }
+
+    // per-user counters only cover recent activity, the full history is in "Message"
+    @Scheduled(fixedDelay = 600_000)
+    public void evictIdleUsers() {
+        long now = System.nanoTime();
+        long idleNanos = userIdle.toNanos();
+        byUser.forEach((id, counters) -> byUser.computeIfPresent(id,
+                (key, current) -> now - current.lastUsedNanos > idleNanos ? null : current));
+    }
+
+    @Scheduled(fixedDelayString = "${app.usage.rate-interval-ms:10000}")
+    public synchronized void sampleRates() {
+        long now = System.nanoTime();
+        long prompt = total.promptTokens.sum();
+        long completion = total.completionTokens.sum();
+        double seconds = (now - lastSampleNanos) / 1e9;
+        if (seconds > 0) {
+            promptTokensPerSecond = (prompt - lastPromptTokens) / seconds;
+            completionTokensPerSecond = (completion - lastCompletionTokens) / seconds;
+        }
+        lastSampleNanos = now;
+        lastPromptTokens = prompt;
+        lastCompletionTokens = completion;
+    }
+
+    private static final class Counters {
+        private final LongAdder generations = new LongAdder();
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder completionTokens = new LongAdder();
+        private long lastUsedNanos;
+
+        private void add(long prompt, long completion) {
+            generations.increment();
+            promptTokens.add(prompt);
+            completionTokens.add(completion);
+        }
+
+        private TokenUsage snapshot() {
+            return TokenUsage.of(generations.sum(), promptTokens.sum(), completionTokens.sum());
+        }
+    }
+}
@@ -0,0 +1,10 @@
+create table if not exists "IdempotencyKey" (
+    key text primary key,
+    fingerprint text not null,
+    response text,
+    "sessionId" bigint,
+    "createdAt" timestamptz not null default now(),
+    "expiresAt" timestamptz not null
+);
+
+create index if not exists idx_idempotency_key_expires on "IdempotencyKey"("expiresAt");
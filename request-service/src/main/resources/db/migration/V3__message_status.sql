@@ -0,0 +1 @@
+alter table "Message" add column if not exists status text not null default 'COMPLETED';
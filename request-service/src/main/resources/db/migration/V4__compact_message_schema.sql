@@ -0,0 +1,52 @@
+-- Roles, assistants and statuses become smallint codes (see Assistant, ChatRole, MessageStatus),
+-- timestamps become timestamptz, long texts are TOAST-compressed with lz4.
+-- "Message" is rebuilt so that fixed-width columns come first, ordered by alignment.
+-- The rebuild also numbers messages within their session (seq, see V5): every row is rewritten only once.
+
+alter table "Session" add column assistant smallint;
+update "Session" set assistant = case upper("assistantRole")
+    when 'ACCOUNTANT' then 1
+    when 'LAWYER' then 2
+    when 'MARKETING' then 3
+    when 'COPYWRITER' then 4
+    when 'HR' then 5
+    when 'MANAGER' then 6
+    when 'CONSULTANT' then 7
+    when 'DESIGNER' then 8
+    else 0
+end;
+alter table "Session" alter column assistant set not null;
+alter table "Session" drop column "assistantRole";
+
+create table "Message_compact" (
+    id bigint generated by default as identity primary key,
+    "sessionId" bigint not null references "Session"(id),
+    timestamp timestamptz not null,
+    seq integer not null,
+    role smallint not null,
+    status smallint not null default 1,
+    text text compression lz4 not null
+);
+
+-- user turns used to be stored under the assistant name
+insert into "Message_compact"(id, "sessionId", timestamp, seq, role, status, text)
+select id,
+       "sessionId",
+       timestamp at time zone 'UTC',
+       row_number() over (partition by "sessionId" order by timestamp, id),
+       case role when 'assistant' then 2 when 'system' then 3 else 1 end,
+       case status when 'CANCELLED' then 2 else 1 end,
+       text
+from "Message"
+order by "sessionId", timestamp, id;
+
+drop table "Message";
+alter table "Message_compact" rename to "Message";
+alter index "Message_compact_pkey" rename to "Message_pkey";
+alter table "Message" rename constraint "Message_compact_sessionId_fkey" to "Message_sessionId_fkey";
+
+select setval(pg_get_serial_sequence('"Message"', 'id'), coalesce(max(id), 0) + 1, false) from "Message";
+
+create unique index idx_message_session_seq on "Message"("sessionId", seq);
+
+alter table "IdempotencyKey" alter column response set compression lz4;
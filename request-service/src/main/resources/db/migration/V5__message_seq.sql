@@ -0,0 +1,8 @@
+-- Per-session monotonic message sequence: ordering no longer depends on client clocks or timestamp ties.
+-- "Message".seq is filled by the V4 rebuild, the session keeps the last one handed out.
+alter table "Session" add column "lastSeq" integer not null default 0;
+
+update "Session" s
+set "lastSeq" = m.max_seq
+from (select "sessionId", max(seq) as max_seq from "Message" group by "sessionId") m
+where m."sessionId" = s.id;
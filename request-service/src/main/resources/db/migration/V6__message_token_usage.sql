@@ -0,0 +1,6 @@
+-- Token usage reported by the LLM backend, set on assistant messages only.
+-- Nullable columns without a default are added in place, existing rows are not rewritten.
+alter table "Message" add column "promptTokens" integer, add column "completionTokens" integer;
+
+-- daily rollups scan only assistant messages with usage, in time order
+create index idx_message_usage_ts on "Message"(timestamp) where "completionTokens" is not null;
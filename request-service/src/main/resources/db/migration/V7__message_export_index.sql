@@ -0,0 +1,2 @@
+-- Date-range exports read a time slice in (timestamp, id) order straight from the index, no full scan or sort.
+create index idx_message_ts_id on "Message"(timestamp, id);
@@ -0,0 +1,50 @@
+package twentuoneh.ru.requestservice.configuration;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.core.type.classreading.SimpleMetadataReaderFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The fast-start image evaluates property conditions at AOT build time, so they cannot be runtime switches.
+ */
+class ConditionalWiringTest {
+
+    private static final List<String> PROPERTY_CONDITIONS = List.of(
+            ConditionalOnProperty.class.getName(), ConditionalOnExpression.class.getName());
+    // fixed per image on purpose and checked against the runtime properties by AotConditionCheck
+    private static final Set<String> BUILD_TIME_SWITCHES = Set.of(OpenApiConfig.class.getName());
+
+    @Test
+    void propertyConditionsAreOnlyUsedForBuildTimeSwitches() throws IOException {
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        MetadataReaderFactory readers = new SimpleMetadataReaderFactory(resolver);
+        List<String> offenders = new ArrayList<>();
+        for (Resource resource : resolver.getResources("classpath*:twentuoneh/ru/requestservice/**/*.class")) {
+            AnnotationMetadata metadata = readers.getMetadataReader(resource).getAnnotationMetadata();
+            if (BUILD_TIME_SWITCHES.contains(metadata.getClassName())) {
+                continue;
+            }
+            for (String condition : PROPERTY_CONDITIONS) {
+                if (metadata.isAnnotated(condition)) {
+                    offenders.add(metadata.getClassName());
+                }
+                metadata.getAnnotatedMethods(condition)
+                        .forEach(method -> offenders.add(metadata.getClassName() + "#" + method.getMethodName()));
+            }
+        }
+        assertEquals(List.of(), offenders,
+                "select runtime switches in a @Bean method or check the property at runtime");
+    }
+}
@@ -0,0 +1,73 @@
+package twentuoneh.ru.requestservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.web.context.request.async.DeferredResult;
+import twentuoneh.ru.requestservice.dto.MessageRequest;
+import twentuoneh.ru.requestservice.dto.MessageResponse;
+import twentuoneh.ru.requestservice.enums.Assistant;
+import twentuoneh.ru.requestservice.service.assistants.AssistantService;
+import twentuoneh.ru.requestservice.service.assistants.AssistantServiceFactory;
+import twentuoneh.ru.requestservice.service.idempotency.IdempotencyService;
+import twentuoneh.ru.requestservice.service.llm.GenerationCancelledException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RequestServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AssistantService assistant = mock(AssistantService.class);
+    private final RequestService requestService;
+
+    RequestServiceTest() {
+        AssistantServiceFactory factory = mock(AssistantServiceFactory.class);
+        when(factory.getService(any())).thenReturn(assistant);
+        IdempotencyService idempotencyService = mock(IdempotencyService.class);
+        when(idempotencyService.execute(any(), any(), any()))
+                .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(2)).get());
+        requestService = new RequestService(factory, idempotencyService, new SimpleAsyncTaskExecutor(), meterRegistry);
+    }
+
+    @Test
+    void cancelsKeyedGenerationOnClientRequest() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(assistant.handle(any())).thenAnswer(invocation -> {
+            started.countDown();
+            try {
+                new CountDownLatch(1).await();
+                return null;
+            } catch (InterruptedException ex) {
+                interrupted.countDown();
+                throw new GenerationCancelledException(1L, ex);
+            }
+        });
+
+        requestService.sendMessageAsync(request(), "key-1", new DeferredResult<MessageResponse>());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertFalse(requestService.cancel(2L, "key-1"), "keys are scoped by user");
+        assertTrue(requestService.cancel(1L, "key-1"));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, meterRegistry.counter("llm.generation.cancelled", "reason", RequestService.CANCEL_CLIENT).count());
+        assertFalse(requestService.cancel(1L, "key-1"), "a finished generation is forgotten");
+    }
+
+    private static MessageRequest request() {
+        MessageRequest request = new MessageRequest();
+        request.setUserId(1L);
+        request.setAssistant(Assistant.DEFAULT);
+        request.setMessage("Как правильно оформить счет-фактуру?");
+        return request;
+    }
+}
@@ -0,0 +1,117 @@
+package twentuoneh.ru.requestservice.service.assistants;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import twentuoneh.ru.requestservice.dto.MessageRequest;
+import twentuoneh.ru.requestservice.entity.Message;
+import twentuoneh.ru.requestservice.entity.Session;
+import twentuoneh.ru.requestservice.entity.User;
+import twentuoneh.ru.requestservice.enums.Assistant;
+import twentuoneh.ru.requestservice.enums.ChatRole;
+import twentuoneh.ru.requestservice.enums.MessageStatus;
+import twentuoneh.ru.requestservice.service.llm.GenerationCancelledException;
+import twentuoneh.ru.requestservice.service.llm.GenerationInterruptedException;
+import twentuoneh.ru.requestservice.service.llm.LlmClient;
+import twentuoneh.ru.requestservice.service.llm.LlmScheduler;
+import twentuoneh.ru.requestservice.service.ratelimit.UserRateLimiter;
+import twentuoneh.ru.requestservice.service.repos.MessageService;
+import twentuoneh.ru.requestservice.service.repos.SessionService;
+import twentuoneh.ru.requestservice.service.repos.UserService;
+import twentuoneh.ru.requestservice.service.turns.LocalSessionTurnLock;
+import twentuoneh.ru.requestservice.service.usage.TokenUsageService;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class DefaultAssistantServiceTest {
+
+    private static final long USER_ID = 1L;
+    private static final long SESSION_ID = 10L;
+
+    private final LlmClient llm = mock(LlmClient.class);
+    private final UserService userService = mock(UserService.class);
+    private final SessionService sessionService = mock(SessionService.class);
+    private final MessageService messageService = mock(MessageService.class);
+    private final LlmScheduler scheduler = mock(LlmScheduler.class);
+    private final TokenUsageService tokenUsageService = mock(TokenUsageService.class);
+    private DefaultAssistantService service;
+
+    @BeforeEach
+    void setUp() {
+        User user = User.builder().id(USER_ID).build();
+        when(userService.getUserById(USER_ID)).thenReturn(Optional.of(user));
+        when(sessionService.getSessionById(SESSION_ID)).thenReturn(Optional.of(
+                Session.builder().id(SESSION_ID).user(user).assistant(Assistant.DEFAULT).build()));
+        when(messageService.findBySessionIdOrderBySeqAsc(SESSION_ID)).thenReturn(List.of());
+        when(messageService.createMessage(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        service = new DefaultAssistantService(llm, userService, sessionService, messageService, scheduler,
+                mock(UserRateLimiter.class), new LocalSessionTurnLock(), tokenUsageService);
+    }
+
+    @AfterEach
+    void clearInterrupt() {
+        Thread.interrupted();
+    }
+
+    @Test
+    void interruptedGenerationKeepsPartialOutput() {
+        when(scheduler.execute(any(), any(), any())).thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(2)).get());
+        when(llm.generate(any(), any(), any(), any())).thenAnswer(invocation -> {
+            Thread.currentThread().interrupt();
+            throw new GenerationInterruptedException("Счет-фактура оформляется", new RuntimeException(new InterruptedException()));
+        });
+
+        assertThrows(GenerationCancelledException.class, () -> service.handle(request()));
+
+        Message saved = lastSavedMessage();
+        assertEquals(ChatRole.ASSISTANT, saved.getRole());
+        assertEquals(MessageStatus.CANCELLED, saved.getStatus());
+        assertEquals("Счет-фактура оформляется", saved.getText());
+        // cleared, so that the cancelled turn could be written to the database
+        assertFalse(Thread.currentThread().isInterrupted());
+        verifyNoInteractions(tokenUsageService);
+    }
+
+    @Test
+    void generationInterruptedInQueueIsSavedEmpty() {
+        when(scheduler.execute(any(), any(), any())).thenAnswer(invocation -> {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a free LLM slot", new InterruptedException());
+        });
+
+        assertThrows(GenerationCancelledException.class, () -> service.handle(request()));
+
+        Message saved = lastSavedMessage();
+        assertEquals(MessageStatus.CANCELLED, saved.getStatus());
+        assertEquals("", saved.getText());
+        verifyNoInteractions(llm);
+    }
+
+    private Message lastSavedMessage() {
+        ArgumentCaptor<Message> messages = ArgumentCaptor.forClass(Message.class);
+        verify(messageService, times(2)).createMessage(messages.capture());
+        return messages.getValue();
+    }
+
+    private static MessageRequest request() {
+        MessageRequest request = new MessageRequest();
+        request.setUserId(USER_ID);
+        request.setSessionId(SESSION_ID);
+        request.setAssistant(Assistant.DEFAULT);
+        request.setMessage("Как правильно оформить счет-фактуру?");
+        return request;
+    }
+}
@@ -0,0 +1,114 @@
+package twentuoneh.ru.requestservice.service.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import twentuoneh.ru.requestservice.enums.Assistant;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BrownoutControllerTest {
+
+    private static final GenerationSettings NORMAL = new GenerationSettings("main", 512, 20);
+
+    private final LlmScheduler scheduler = mock(LlmScheduler.class);
+    private BrownoutController controller;
+
+    @BeforeEach
+    void setUp() {
+        BrownoutProperties properties = new BrownoutProperties();
+        properties.setHighQueueDepth(20);
+        properties.setLowQueueDepth(5);
+        properties.setHighLatency(Duration.ofSeconds(30));
+        properties.setLowLatency(Duration.ofSeconds(10));
+        properties.setEscalateAfter(2);
+        properties.setRecoverAfter(3);
+        properties.setSteps(List.of(step(null, 256, null), step("fallback", 128, 6)));
+        controller = new BrownoutController(properties, scheduler, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void escalatesOneStepPerSustainedPressureUpToLastStep() {
+        load(50, 0);
+        controller.evaluate();
+        assertEquals(0, controller.getLevel());
+        controller.evaluate();
+        assertEquals(1, controller.getLevel());
+        evaluate(10);
+        assertEquals(2, controller.getLevel());
+    }
+
+    @Test
+    void recoversOneStepPerSustainedCalm() {
+        load(50, 0);
+        evaluate(4);
+        assertEquals(2, controller.getLevel());
+
+        load(0, 1_000);
+        evaluate(2);
+        assertEquals(2, controller.getLevel());
+        controller.evaluate();
+        assertEquals(1, controller.getLevel());
+        evaluate(3);
+        assertEquals(0, controller.getLevel());
+    }
+
+    @Test
+    void inBetweenLoadHoldsLevelAndResetsStreaks() {
+        load(50, 0);
+        evaluate(2);
+        assertEquals(1, controller.getLevel());
+
+        load(0, 1_000);
+        evaluate(2);
+        load(10, 1_000);
+        controller.evaluate();
+        load(0, 1_000);
+        evaluate(2);
+        assertEquals(1, controller.getLevel());
+
+        load(0, 40_000);
+        controller.evaluate();
+        load(10, 1_000);
+        controller.evaluate();
+        load(0, 40_000);
+        controller.evaluate();
+        assertEquals(1, controller.getLevel());
+    }
+
+    @Test
+    void appliesStepOnTopOfNormalSettings() {
+        assertEquals(NORMAL, controller.apply(Assistant.LAWYER, NORMAL));
+
+        load(50, 0);
+        evaluate(2);
+        assertEquals(new GenerationSettings("main", 256, 20), controller.apply(Assistant.LAWYER, NORMAL));
+        evaluate(2);
+        assertEquals(new GenerationSettings("fallback", 128, 6), controller.apply(Assistant.LAWYER, NORMAL));
+    }
+
+    private void load(int queueDepth, double p95Millis) {
+        when(scheduler.getQueueDepth()).thenReturn(queueDepth);
+        when(scheduler.latencyPercentileMillis(anyDouble())).thenReturn(p95Millis);
+    }
+
+    private void evaluate(int times) {
+        for (int i = 0; i < times; i++) {
+            controller.evaluate();
+        }
+    }
+
+    private static BrownoutProperties.Step step(String model, Integer maxTokens, Integer historyDepth) {
+        BrownoutProperties.Step step = new BrownoutProperties.Step();
+        step.setModel(model);
+        step.setMaxTokens(maxTokens);
+        step.setHistoryDepth(historyDepth);
+        return step;
+    }
+}
@@ -0,0 +1,126 @@
+package twentuoneh.ru.requestservice.service.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import twentuoneh.ru.requestservice.enums.Assistant;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LlmSchedulerTest {
+
+    private final List<Thread> threads = new ArrayList<>();
+    private final CountDownLatch releaseBlocker = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        releaseBlocker.countDown();
+        for (Thread thread : threads) {
+            thread.join(5_000);
+        }
+    }
+
+    @Test
+    void interleavesFlowsInsteadOfServingThemInArrivalOrder() throws InterruptedException {
+        LlmScheduler scheduler = scheduler(1, 10);
+        List<String> served = Collections.synchronizedList(new ArrayList<>());
+        occupySlot(scheduler);
+
+        for (int i = 0; i < 4; i++) {
+            enqueue(scheduler, 1L, () -> served.add("A"));
+        }
+        for (int i = 0; i < 2; i++) {
+            enqueue(scheduler, 2L, () -> served.add("B"));
+        }
+        releaseBlocker.countDown();
+        for (Thread thread : threads) {
+            thread.join(5_000);
+        }
+
+        assertEquals(List.of("A", "B", "A", "B", "A", "A"), served);
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() throws InterruptedException {
+        LlmScheduler scheduler = scheduler(1, 1);
+        occupySlot(scheduler);
+        enqueue(scheduler, 1L, () -> { });
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> scheduler.execute(2L, Assistant.DEFAULT, () -> "rejected"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ex.getStatusCode());
+        assertEquals(1, scheduler.getQueueDepth());
+    }
+
+    @Test
+    void interruptedWaiterLeavesTheQueue() throws InterruptedException {
+        LlmScheduler scheduler = scheduler(1, 10);
+        AtomicBoolean ran = new AtomicBoolean();
+        occupySlot(scheduler);
+        enqueue(scheduler, 1L, () -> ran.set(true));
+
+        Thread waiter = threads.get(threads.size() - 1);
+        waiter.interrupt();
+        waiter.join(5_000);
+        assertEquals(0, scheduler.getQueueDepth());
+
+        releaseBlocker.countDown();
+        // the slot of the cancelled generation is not leaked
+        assertEquals("next", scheduler.execute(2L, Assistant.DEFAULT, () -> "next"));
+        assertFalse(ran.get());
+    }
+
+    private static LlmScheduler scheduler(int maxConcurrency, int maxQueue) {
+        LlmSchedulerProperties properties = new LlmSchedulerProperties();
+        properties.setMaxConcurrency(maxConcurrency);
+        properties.setMaxQueue(maxQueue);
+        return new LlmScheduler(properties, new SimpleMeterRegistry());
+    }
+
+    private void occupySlot(LlmScheduler scheduler) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        start(() -> scheduler.execute(0L, Assistant.DEFAULT, () -> {
+            started.countDown();
+            await(releaseBlocker);
+            return null;
+        }));
+        started.await();
+    }
+
+    // returns once the generation is waiting in the queue, so arrival order is deterministic
+    private void enqueue(LlmScheduler scheduler, Long userId, Runnable work) throws InterruptedException {
+        int depth = scheduler.getQueueDepth();
+        start(() -> scheduler.execute(userId, Assistant.DEFAULT, () -> {
+            work.run();
+            return null;
+        }));
+        while (scheduler.getQueueDepth() == depth) {
+            Thread.sleep(1);
+        }
+    }
+
+    private void start(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.setUncaughtExceptionHandler((t, ex) -> { });
+        threads.add(thread);
+        thread.start();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package twentuoneh.ru.requestservice.service.llm;
+
+import org.junit.jupiter.api.Test;
+import twentuoneh.ru.requestservice.dto.ChatMessage;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalLlmClientTest {
+
+    @Test
+    void keepsHistoryWithinDepth() {
+        List<ChatMessage> history = history(5);
+        assertSame(history, LocalLlmClient.trimHistory(history, 20));
+    }
+
+    @Test
+    void trimsInWholeStepsFromTheOldestMessage() {
+        List<ChatMessage> trimmed = LocalLlmClient.trimHistory(history(21), 20);
+        assertEquals(11, trimmed.size());
+        assertEquals("10", trimmed.get(0).content());
+        // the same prefix is kept for the next turns
+        assertEquals("10", LocalLlmClient.trimHistory(history(29), 20).get(0).content());
+    }
+
+    @Test
+    void smallDepthNeverDropsWholeHistory() {
+        for (int depth : new int[]{1, 6, 10, 20}) {
+            for (int size = depth + 1; size <= 60; size++) {
+                int kept = LocalLlmClient.trimHistory(history(size), depth).size();
+                assertTrue(kept <= depth, "depth " + depth + ", size " + size + ": kept " + kept);
+                assertTrue(kept > depth / 2, "depth " + depth + ", size " + size + ": kept " + kept);
+            }
+        }
+    }
+
+    private static List<ChatMessage> history(int size) {
+        return IntStream.range(0, size)
+                .mapToObj(i -> new ChatMessage(i % 2 == 0 ? "user" : "assistant", String.valueOf(i)))
+                .toList();
+    }
+}
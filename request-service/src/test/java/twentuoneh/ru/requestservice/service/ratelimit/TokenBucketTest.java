@@ -0,0 +1,42 @@
+package twentuoneh.ru.requestservice.service.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void refillsOverTimeUpToCapacity() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(2, 1, clock::get);
+
+        assertTrue(bucket.tryConsume(1));
+        assertTrue(bucket.tryConsume(1));
+        assertFalse(bucket.tryConsume(1));
+        assertEquals(SECOND, bucket.nanosUntilAvailable(1));
+
+        clock.addAndGet(10 * SECOND);
+        assertTrue(bucket.isFull());
+        assertEquals(2, bucket.available(), 1e-9);
+    }
+
+    @Test
+    void consumeGoesIntoDebt() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10, 5, clock::get);
+
+        bucket.consume(20);
+        assertEquals(-10, bucket.available(), 1e-9);
+        assertFalse(bucket.tryConsume(1));
+
+        clock.addAndGet(2 * SECOND);
+        assertEquals(0, bucket.available(), 1e-9);
+    }
+}
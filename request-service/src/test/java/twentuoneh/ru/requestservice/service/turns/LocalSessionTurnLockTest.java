@@ -0,0 +1,55 @@
+package twentuoneh.ru.requestservice.service.turns;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LocalSessionTurnLockTest {
+
+    @Test
+    void otherSessionRunsWhileTurnIsInProgress() throws InterruptedException {
+        LocalSessionTurnLock lock = new LocalSessionTurnLock();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Thread longTurn = new Thread(() -> lock.withLock(1L, () -> {
+            started.countDown();
+            try {
+                return finish.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }));
+        longTurn.start();
+        started.await();
+
+        assertEquals("other", lock.withLock(2L, () -> "other"));
+
+        finish.countDown();
+        longTurn.join(5_000);
+        assertEquals(0, lock.activeSessions());
+    }
+
+    @Test
+    void turnsOfOneSessionDoNotOverlap() throws InterruptedException {
+        LocalSessionTurnLock lock = new LocalSessionTurnLock();
+        int[] counter = new int[1];
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1_000; j++) {
+                    lock.withLock(1L, () -> counter[0]++);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join(10_000);
+        }
+
+        assertEquals(8_000, counter[0]);
+        assertEquals(0, lock.activeSessions());
+    }
+}